@@ -52,6 +52,11 @@ public class CSVSlice implements Slice<CSVRecord> {
 	}
 
 
+	@Override
+	public boolean isIndependent() {
+		return true;
+	}
+
 	public LinkedHashMap<Integer, String> getHeaders(){
 		return this.headers;
 	}
@@ -21,6 +21,8 @@ import org.apache.commons.csv.CSVFormat;
 import org.apache.commons.csv.CSVRecord;
 import org.apache.commons.io.input.BOMInputStream;
 import org.apache.commons.lang3.StringUtils;
+import org.apache.jena.atlas.io.IO;
+import org.apache.jena.atlas.iterator.IteratorCloseable;
 import org.apache.jena.ext.com.google.common.collect.Sets;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -202,7 +204,7 @@ public class CSVTriplifier implements Triplifier, Slicer {
 		Charset charset = Triplifier.getCharsetArgument(properties);
 		String dataSourceId = SPARQLAnythingConstants.DATA_SOURCE_ID; // there is always 1 data source id
 
-		// XXX How do we close the inputstream?
+		// The input stream is closed with the iterator of the slices
 		final InputStream is = Triplifier.getInputStream(properties);
 
 		Reader in = new InputStreamReader(new BOMInputStream(is), charset);
@@ -215,7 +217,7 @@ public class CSVTriplifier implements Triplifier, Slicer {
 			@Override
 			public Iterator<Slice> iterator() {
 				log.debug("Iterating slices");
-				return new Iterator<Slice>() {
+				return new IteratorCloseable<Slice>() {
 					int rown = 0;
 					int headersRowNumber = PropertyUtils.getIntegerProperty(properties, PROPERTY_HEADER_ROW);
 
@@ -224,6 +226,11 @@ public class CSVTriplifier implements Triplifier, Slicer {
 						return recordIterator.hasNext();
 					}
 
+					@Override
+					public void close() {
+						IO.closeSilent(in);
+					}
+
 					@Override
 					public Slice next() {
 						rown++;
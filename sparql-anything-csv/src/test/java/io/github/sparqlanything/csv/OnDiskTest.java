@@ -23,6 +23,7 @@ import io.github.sparqlanything.model.TriplifierHTTPException;
 import org.apache.commons.io.FileUtils;
 import org.apache.jena.query.TxnType;
 import org.apache.jena.sparql.core.DatasetGraph;
+import org.apache.jena.sparql.core.Quad;
 import org.junit.Assert;
 import org.junit.Test;
 import org.slf4j.Logger;
@@ -31,8 +32,10 @@ import org.slf4j.LoggerFactory;
 import java.io.File;
 import java.io.IOException;
 import java.nio.file.Files;
+import java.util.HashSet;
 import java.util.Objects;
 import java.util.Properties;
+import java.util.Set;
 import java.util.concurrent.atomic.AtomicInteger;
 
 public class OnDiskTest {
@@ -93,4 +96,36 @@ public class OnDiskTest {
 		graph.end();
 		FileUtils.deleteQuietly(tmp);
 	}
+
+	private Set<Quad> triplifyOnDisk(File tmp, String loader) throws IOException, TriplifierHTTPException {
+		Properties properties = new Properties();
+		properties.setProperty("ondisk", tmp.getAbsolutePath());
+		properties.setProperty(IRIArgument.ONDISK_LOADER.toString(), loader);
+		properties.setProperty(IRIArgument.LOCATION.toString(), Objects.requireNonNull(getClass().getClassLoader().getResource("./test3.csv")).toString());
+		FacadeXGraphBuilder b = new BaseFacadeXGraphBuilder(properties);
+		triplifier.triplify(properties, b);
+		DatasetGraph graph = b.getDatasetGraph();
+		graph.commit();
+		graph.end();
+
+		graph.begin(TxnType.READ);
+		Set<Quad> quads = new HashSet<>();
+		graph.find().forEachRemaining(quads::add);
+		graph.end();
+		return quads;
+	}
+
+	@Test
+	public void testBulkLoaders() throws IOException, TriplifierHTTPException {
+		File tmp = Files.createTempDirectory(null).toFile();
+		Set<Quad> expected = triplifyOnDisk(new File(tmp, "none"), "none");
+		Assert.assertEquals(21, expected.size());
+		for (String loader : new String[]{"basic", "sequential", "phased", "parallel"}) {
+			File location = new File(tmp, loader);
+			Assert.assertEquals(loader, expected, triplifyOnDisk(location, loader));
+			// Reusing the location, the triples already there are not duplicated
+			Assert.assertEquals(loader, expected, triplifyOnDisk(location, loader));
+		}
+		FileUtils.deleteQuietly(tmp);
+	}
 }
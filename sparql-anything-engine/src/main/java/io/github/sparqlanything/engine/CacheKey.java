@@ -0,0 +1,122 @@
+/*
+ * Copyright (c) 2023 SPARQL Anything Contributors @ http://github.com/sparql-anything
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.sparqlanything.engine;
+
+import io.github.sparqlanything.model.IRIArgument;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.jena.sparql.algebra.Op;
+import org.apache.jena.sparql.core.Var;
+import org.apache.jena.sparql.graph.NodeTransform;
+import org.apache.jena.sparql.graph.NodeTransformLib;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * The key of a triplified graph in the caches.
+ * <p>
+ * The key is made of the strategy, a digest of the properties, sorted and without the options that do not affect the
+ * content of the graph, and a digest of the algebra, where variables are renamed in order of appearance (so that
+ * queries differing only in variable names share the same key). With strategy 0 the whole source is triplified
+ * regardless of the query, therefore the algebra is not part of the key.
+ */
+public final class CacheKey {
+
+	private static final Set<String> IRRELEVANT_PROPERTIES = Set.of(IRIArgument.NO_CACHE.toString(),
+			IRIArgument.OP_SERVICE_SILENT.toString(), IRIArgument.STRATEGY.toString(), IRIArgument.SNAPSHOT.toString(),
+			IRIArgument.ONDISK_LOADER.toString());
+
+	private final int strategy;
+	private final String propertiesDigest;
+	private final String opDigest;
+
+	private CacheKey(int strategy, String propertiesDigest, String opDigest) {
+		this.strategy = strategy;
+		this.propertiesDigest = propertiesDigest;
+		this.opDigest = opDigest;
+	}
+
+	public static CacheKey of(Properties properties, Op op, int strategy) {
+		return new CacheKey(strategy, digest(properties), strategy == 0 ? "" : digest(op));
+	}
+
+	public int getStrategy() {
+		return strategy;
+	}
+
+	public String getPropertiesDigest() {
+		return propertiesDigest;
+	}
+
+	static String digest(Properties properties) {
+		Map<String, String> sorted = new TreeMap<>();
+		for (String key : properties.stringPropertyNames()) {
+			if (!IRRELEVANT_PROPERTIES.contains(key)) {
+				sorted.put(key, properties.getProperty(key));
+			}
+		}
+		StringBuilder sb = new StringBuilder();
+		for (Map.Entry<String, String> e : sorted.entrySet()) {
+			// Lengths make the encoding unambiguous
+			sb.append(e.getKey().length()).append(':').append(e.getKey());
+			sb.append(e.getValue().length()).append(':').append(e.getValue());
+		}
+		return DigestUtils.sha256Hex(sb.toString());
+	}
+
+	static String digest(Op op) {
+		return DigestUtils.sha256Hex(normalise(op).toString());
+	}
+
+	/**
+	 * Renames the variables of the algebra in order of appearance.
+	 *
+	 * @param op the algebra
+	 * @return the normalised algebra
+	 */
+	static Op normalise(Op op) {
+		final Map<Var, Var> renaming = new HashMap<>();
+		NodeTransform transform = node -> {
+			if (!Var.isVar(node)) {
+				return node;
+			}
+			return renaming.computeIfAbsent(Var.alloc(node), v -> Var.alloc("v" + renaming.size()));
+		};
+		return NodeTransformLib.transform(transform, op);
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if (this == o) return true;
+		if (o == null || getClass() != o.getClass()) return false;
+		CacheKey other = (CacheKey) o;
+		return strategy == other.strategy && propertiesDigest.equals(other.propertiesDigest) && opDigest.equals(other.opDigest);
+	}
+
+	@Override
+	public int hashCode() {
+		return 31 * (31 * strategy + propertiesDigest.hashCode()) + opDigest.hashCode();
+	}
+
+	@Override
+	public String toString() {
+		return strategy + ":" + propertiesDigest + ":" + opDigest;
+	}
+}
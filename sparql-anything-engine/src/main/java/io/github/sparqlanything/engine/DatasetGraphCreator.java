@@ -18,6 +18,7 @@ package io.github.sparqlanything.engine;
 
 import io.github.sparqlanything.metadata.MetadataTriplifier;
 import io.github.sparqlanything.model.*;
+import org.apache.commons.codec.digest.DigestUtils;
 import org.apache.jena.graph.Node;
 import org.apache.jena.graph.NodeFactory;
 import org.apache.jena.query.DatasetFactory;
@@ -26,39 +27,102 @@ import org.apache.jena.rdf.model.Model;
 import org.apache.jena.rdf.model.ModelFactory;
 import org.apache.jena.rdf.model.Resource;
 import org.apache.jena.rdf.model.ResourceFactory;
+import org.apache.jena.riot.Lang;
+import org.apache.jena.riot.RDFDataMgr;
+import org.apache.jena.riot.RDFFormat;
+import org.apache.jena.riot.RiotException;
 import org.apache.jena.sparql.algebra.Op;
 import org.apache.jena.sparql.core.DatasetGraph;
 import org.apache.jena.sparql.core.DatasetGraphFactory;
 import org.apache.jena.sparql.engine.ExecutionContext;
+import org.apache.jena.sparql.util.Context;
 import org.apache.jena.sparql.util.Symbol;
+import org.apache.jena.tdb2.DatabaseMgr;
+import org.apache.jena.tdb2.TDB2Factory;
 import org.apache.jena.vocabulary.RDF;
 import org.apache.jena.vocabulary.VOID;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
 import java.net.URL;
-import java.util.HashMap;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
 
 public class DatasetGraphCreator {
 
 	private static final Logger logger = LoggerFactory.getLogger(DatasetGraphCreator.class);
 	private final static Symbol inMemoryCache = Symbol.create("facade-x-in-memory-cache");
+	// The temporary on disk graphs used by the query, released when it ends
+	private final static Symbol spilledGraphs = Symbol.create("facade-x-spilled-graphs");
+	private final static String SNAPSHOT_EXTENSION = ".trdf";
+	// The sources triplified in an on disk graph, stored with the graph
+	private final static String ONDISK_SOURCES = "sparql-anything-sources.properties";
 	private final MetadataTriplifier metadataTriplifier = new MetadataTriplifier();
-	private final Map<String, DatasetGraph> executedFacadeXIris;
+	// The graphs being triplified by any execution, by cache key and silent flag (a silent failure gives an empty graph)
+	private final static Map<String, CompletableFuture<DatasetGraph>> inFlight = new ConcurrentHashMap<>();
+	private final Map<CacheKey, DatasetGraph> executedFacadeXIris;
+	private final Set<DatasetGraph> spilled;
 	private final ExecutionContext execCxt;
 
 	public DatasetGraphCreator(ExecutionContext execCxt) {
 		this.execCxt = execCxt;
 
-		if (!execCxt.getContext().isDefined(inMemoryCache)) {
-			logger.trace("Initialising in-memory cache");
-			execCxt.getContext().set(inMemoryCache, new HashMap<String, DatasetGraph>());
+		synchronized (execCxt.getContext()) {
+			if (!execCxt.getContext().isDefined(inMemoryCache)) {
+				logger.trace("Initialising in-memory cache");
+				// Graphs may be built concurrently, see FacadeXOpExecutor#triplifyConcurrently
+				execCxt.getContext().set(inMemoryCache, new ConcurrentHashMap<CacheKey, DatasetGraph>());
+				execCxt.getContext().set(spilledGraphs, Collections.synchronizedSet(Collections.newSetFromMap(new IdentityHashMap<DatasetGraph, Boolean>())));
+			}
 		}
 		executedFacadeXIris = execCxt.getContext().get(inMemoryCache);
+		spilled = execCxt.getContext().get(spilledGraphs);
+	}
+
+	/**
+	 * Releases the temporary on disk graphs used by a query, and empties its cache. Called when the query ends.
+	 *
+	 * @param context the context of the query
+	 */
+	public static void release(Context context) {
+		Set<DatasetGraph> graphs;
+		synchronized (context) {
+			graphs = context.get(spilledGraphs);
+			if (graphs == null) {
+				return;
+			}
+			Map<CacheKey, DatasetGraph> cache = context.get(inMemoryCache);
+			cache.clear();
+		}
+		List<DatasetGraph> released;
+		synchronized (graphs) {
+			released = new ArrayList<>(graphs);
+			graphs.clear();
+		}
+		for (DatasetGraph dg : released) {
+			logger.debug("Releasing a temporary on disk graph");
+			BaseFacadeXGraphBuilder.release(dg);
+		}
 	}
 
 
@@ -70,56 +134,262 @@ public class DatasetGraphCreator {
 
 		boolean use_cache = !PropertyUtils.getBooleanProperty(p, IRIArgument.NO_CACHE);
 		logger.trace("Use cache {}",use_cache);
+		CacheKey key = CacheKey.of(p, op, PropertyExtractor.detectStrategy(p, execCxt));
 		// If the operation was already executed in a previous call, reuse the same
 		// in-memory graph
 		// XXX Future implementations may use a caching system
-		if (use_cache && executedFacadeXIris.containsKey(getInMemoryCacheKey(p, op)))
-			return executedFacadeXIris.get(getInMemoryCacheKey(p, op));
+		if (use_cache && executedFacadeXIris.containsKey(key))
+			return executedFacadeXIris.get(key);
 
-		logger.trace("Properties extracted: {}", p);
-		String urlLocation = p.getProperty(IRIArgument.LOCATION.toString());
+		// Graphs triplified by previous queries are reused as long as the source did not change
+		TriplificationCache sharedCache = TriplificationCache.getInstance();
+		String snapshotDir = PropertyUtils.getStringProperty(p, IRIArgument.SNAPSHOT);
+		String fingerprint = null;
+		OpComponentsAnalyser analyser = null;
+		String ondisk = PropertyUtils.getStringProperty(p, IRIArgument.ONDISK);
+		boolean reuseOndisk = use_cache && ondisk != null && PropertyUtils.getBooleanProperty(p, IRIArgument.ONDISK_REUSE);
+		if (use_cache && (snapshotDir != null || reuseOndisk)) {
+			// Graphs kept across runs are checked against the source itself
+			fingerprint = SourceFingerprint.of(p);
+			logger.trace("Source fingerprint {}", fingerprint);
+		} else if (use_cache && sharedCache.isEnabled()) {
+			fingerprint = SourceFingerprint.ofShared(p, sharedCache.getRemoteTtl());
+			logger.trace("Source fingerprint {}", fingerprint);
+		}
+		// On disk graphs that already contain the source, as triplified by a previous run
+		if (reuseOndisk && fingerprint != null && fingerprint.equals(getOndiskSources(ondisk).getProperty(key.toString()))) {
+			logger.debug("Source already triplified in {}", ondisk);
+			dg = TDB2Factory.connectDataset(ondisk).asDatasetGraph();
+			executedFacadeXIris.put(key, dg);
+			return dg;
+		}
+		if (fingerprint != null) {
+			if (key.getStrategy() == 1) {
+				// Graphs filtered for the components of the operation
+				analyser = OpComponentsAnalyser.of(op);
+			}
+			// The audit graph describes the graph built for this operation, a more general graph would not match it
+			dg = sharedCache.get(key, fingerprint, isAudit(p) ? null : analyser);
+			if (dg != null) {
+				logger.debug("Graph found in the shared cache");
+				executedFacadeXIris.put(key, dg);
+				return dg;
+			}
+			// Graphs triplified by previous runs
+			if (snapshotDir != null) {
+				dg = loadSnapshot(getSnapshotFile(snapshotDir, key, fingerprint));
+				if (dg != null) {
+					executedFacadeXIris.put(key, dg);
+					sharedCache.put(key, fingerprint, dg, analyser);
+					return dg;
+				}
+			}
+		}
 
-		logger.trace("Triplifier {}\n{}", t.getClass().toString(), op);
-		dg = triplify(op, p, t);
+		// Concurrent executions that need the same graph wait for the one triplifying it
+		CompletableFuture<DatasetGraph> flight = null;
+		boolean silent = PropertyUtils.getBooleanProperty(p, IRIArgument.OP_SERVICE_SILENT);
+		String flightKey = key + (silent ? ":silent" : "");
+		if (use_cache && ondisk == null) {
+			flight = new CompletableFuture<>();
+			CompletableFuture<DatasetGraph> running = inFlight.putIfAbsent(flightKey, flight);
+			if (running != null) {
+				logger.debug("Waiting for the same source to be triplified by another execution");
+				dg = await(running);
+				// Unless the other execution already released it
+				if (BaseFacadeXGraphBuilder.retain(dg)) {
+					if (BaseFacadeXGraphBuilder.isSpilled(dg) && !spilled.add(dg)) {
+						// Already used by this query
+						BaseFacadeXGraphBuilder.release(dg);
+					}
+					if (!silent) {
+						executedFacadeXIris.put(key, dg);
+					}
+					return dg;
+				}
+				logger.debug("The graph triplified by another execution was released");
+				flight = null;
+			}
+		}
+		try {
+			logger.trace("Properties extracted: {}", p);
+			String urlLocation = p.getProperty(IRIArgument.LOCATION.toString());
 
-		logger.debug("triplification done -- commiting and ending the write txn");
-		dg.commit();
-		dg.end();
+			logger.trace("Triplifier {}\n{}", t.getClass().toString(), op);
+			dg = triplify(op, p, t);
+			if (BaseFacadeXGraphBuilder.isSpilled(dg)) {
+				spilled.add(dg);
+			}
 
-		// Only make additional work if needed
-		if(logger.isDebugEnabled()) {
-			dg.begin(ReadWrite.READ);
-			logger.debug("Size default graph {}", dg.getDefaultGraph().size());
-			logger.debug("Size of the graph {}: {}", p.getProperty(IRIArgument.LOCATION.toString()), dg.getGraph(NodeFactory.createURI(p.getProperty(IRIArgument.LOCATION.toString()) + "#")).size());
+			logger.debug("triplification done -- commiting and ending the write txn");
+			dg.commit();
 			dg.end();
-		}
 
-		if (urlLocation != null) {
-			logger.trace("Location provided {}", urlLocation);
-			URL url = Triplifier.instantiateURL(urlLocation);
-			dg.begin(ReadWrite.WRITE);
-			createMetadataGraph(dg, p);
-			createAuditGraph(dg, p, url);
-			dg.commit();
+			// Only make additional work if needed
+			if(logger.isDebugEnabled()) {
+				dg.begin(ReadWrite.READ);
+				logger.debug("Size default graph {}", dg.getDefaultGraph().size());
+				logger.debug("Size of the graph {}: {}", p.getProperty(IRIArgument.LOCATION.toString()), dg.getGraph(NodeFactory.createURI(p.getProperty(IRIArgument.LOCATION.toString()) + "#")).size());
+				dg.end();
+			}
+
+			if (urlLocation != null) {
+				logger.trace("Location provided {}", urlLocation);
+				URL url = Triplifier.instantiateURL(urlLocation);
+				dg.begin(ReadWrite.WRITE);
+				createMetadataGraph(dg, p);
+				createAuditGraph(dg, p, url);
+				dg.commit();
+			}
+			// An empty graph may be the result of a silent failure, which must not be reused by the other operations
+			boolean empty = false;
+			if (silent || (fingerprint != null && !DatabaseMgr.isTDB2(dg))) {
+				dg.begin(ReadWrite.READ);
+				empty = dg.isEmpty();
+				dg.end();
+			}
+			// Remember the triplified data
+			if (use_cache && !executedFacadeXIris.containsKey(key) && !(silent && empty)) {
+				executedFacadeXIris.put(key, dg);
+				logger.debug("Graph added to in-memory cache");
+			}
+			if (reuseOndisk && fingerprint != null && DatabaseMgr.isTDB2(dg)) {
+				addOndiskSource(ondisk, key, fingerprint);
+			}
+			// On disk graphs are not shared, as they may be reused or modified by other executions
+			if (fingerprint != null && !DatabaseMgr.isTDB2(dg) && !empty) {
+				sharedCache.put(key, fingerprint, dg, analyser);
+				if (snapshotDir != null) {
+					saveSnapshot(dg, getSnapshotFile(snapshotDir, key, fingerprint));
+				}
+			}
+			// TODO wrap this in a txn or move it to a place where we are already in a txn
+			// logger.trace("Triplified, #triples in default graph {} {}", dg.getDefaultGraph().size(), op.toString());
+
+//			else {
+//				logger.trace("No location, use content: {}", p.getProperty(IRIArgument.CONTENT.toString()));
+//				dg = t.triplify(p);
+//				logger.trace("Size: {} {}", dg.size(), dg.getDefaultGraph().size());
+	//
+//			}
+			if (flight != null) {
+				flight.complete(dg);
+			}
+		} catch (IOException | RuntimeException | Error e) {
+			if (flight != null) {
+				flight.completeExceptionally(e);
+			}
+			throw e;
+		} finally {
+			if (flight != null) {
+				inFlight.remove(flightKey, flight);
+			}
 		}
-		// Remember the triplified data
-		if (use_cache && !executedFacadeXIris.containsKey(getInMemoryCacheKey(p, op))) {
-			executedFacadeXIris.put(getInMemoryCacheKey(p, op), dg);
-			logger.debug("Graph added to in-memory cache");
+		return dg;
+	}
+
+	/**
+	 * Waits for the graph triplified by another execution, and fails as it did.
+	 */
+	private static DatasetGraph await(CompletableFuture<DatasetGraph> flight) throws IOException {
+		try {
+			return flight.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException(e.getMessage());
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof IOException) {
+				throw (IOException) cause;
+			} else if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			} else if (cause instanceof Error) {
+				throw (Error) cause;
+			}
+			throw new IOException(cause);
 		}
-		// TODO wrap this in a txn or move it to a place where we are already in a txn
-		// logger.trace("Triplified, #triples in default graph {} {}", dg.getDefaultGraph().size(), op.toString());
+	}
 
-//		else {
-//			logger.trace("No location, use content: {}", p.getProperty(IRIArgument.CONTENT.toString()));
-//			dg = t.triplify(p);
-//			logger.trace("Size: {} {}", dg.size(), dg.getDefaultGraph().size());
-//
-//		}
+	/**
+	 * The name of a snapshot depends on both the cache key and the fingerprint of the source, so that snapshots of a
+	 * previous version of the source are never loaded.
+	 */
+	private File getSnapshotFile(String snapshotDir, CacheKey key, String fingerprint) {
+		return new File(snapshotDir, DigestUtils.sha256Hex(key.toString()) + "-" + DigestUtils.sha256Hex(fingerprint) + SNAPSHOT_EXTENSION);
+	}
 
+	private DatasetGraph loadSnapshot(File snapshot) {
+		if (!snapshot.isFile()) {
+			return null;
+		}
+		logger.debug("Loading snapshot {}", snapshot);
+		DatasetGraph dg = DatasetGraphFactory.create();
+		try (InputStream is = new BufferedInputStream(new FileInputStream(snapshot))) {
+			RDFDataMgr.read(dg, is, Lang.RDFTHRIFT);
+		} catch (IOException | RiotException e) {
+			logger.warn("Cannot load snapshot {}: {}", snapshot, e.getMessage());
+			return null;
+		}
 		return dg;
 	}
 
+	private void saveSnapshot(DatasetGraph dg, File snapshot) {
+		logger.debug("Saving snapshot {}", snapshot);
+		File dir = snapshot.getParentFile();
+		dg.begin(ReadWrite.READ);
+		try {
+			Files.createDirectories(dir.toPath());
+			File tmp = File.createTempFile(snapshot.getName(), ".tmp", dir);
+			try (OutputStream os = new BufferedOutputStream(new FileOutputStream(tmp))) {
+				RDFDataMgr.write(os, dg, RDFFormat.RDF_THRIFT);
+			}
+			Files.move(tmp.toPath(), snapshot.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			// Remove the snapshots of previous versions of the source
+			String prefix = snapshot.getName().substring(0, snapshot.getName().indexOf('-') + 1);
+			File[] stale = dir.listFiles((d, name) -> name.startsWith(prefix) && name.endsWith(SNAPSHOT_EXTENSION) && !name.equals(snapshot.getName()));
+			if (stale != null) {
+				for (File f : stale) {
+					Files.deleteIfExists(f.toPath());
+				}
+			}
+		} catch (IOException e) {
+			logger.warn("Cannot save snapshot {}: {}", snapshot, e.getMessage());
+		} finally {
+			dg.end();
+		}
+	}
+
+	private static Properties getOndiskSources(String ondisk) {
+		Properties sources = new Properties();
+		File file = new File(ondisk, ONDISK_SOURCES);
+		if (file.isFile()) {
+			try (InputStream is = new BufferedInputStream(new FileInputStream(file))) {
+				sources.load(is);
+			} catch (IOException e) {
+				logger.warn("Cannot read {}: {}", file, e.getMessage());
+			}
+		}
+		return sources;
+	}
+
+	/**
+	 * Records that the on disk graph contains the source as triplified for the key, with the given fingerprint.
+	 */
+	private static synchronized void addOndiskSource(String ondisk, CacheKey key, String fingerprint) {
+		File file = new File(ondisk, ONDISK_SOURCES);
+		Properties sources = getOndiskSources(ondisk);
+		sources.setProperty(key.toString(), fingerprint);
+		try {
+			File tmp = File.createTempFile(ONDISK_SOURCES, ".tmp", file.getParentFile());
+			try (OutputStream os = new BufferedOutputStream(new FileOutputStream(tmp))) {
+				sources.store(os, null);
+			}
+			Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException e) {
+			logger.warn("Cannot write {}: {}", file, e.getMessage());
+		}
+	}
+
 	private void createMetadataGraph(DatasetGraph dg, Properties p) throws IOException {
 		if (triplifyMetadata(p)) {
 			FacadeXGraphBuilder builder = new BaseFacadeXGraphBuilder(p);
@@ -140,8 +410,12 @@ public class DatasetGraphCreator {
 		return result;
 	}
 
+	private boolean isAudit(Properties p) {
+		return p.containsKey("audit") && (p.get("audit").equals("1") || p.get("audit").equals("true"));
+	}
+
 	private void createAuditGraph(DatasetGraph dg, Properties p, URL url) {
-		if (p.containsKey("audit") && (p.get("audit").equals("1") || p.get("audit").equals("true"))) {
+		if (isAudit(p)) {
 			logger.trace("audit information in graph: {}", Triplifier.AUDIT_GRAPH_IRI);
 			logger.trace("{} triples loaded ({})", dg.getGraph(NodeFactory.createURI(url.toString())).size(), NodeFactory.createURI(url.toString()));
 			String SD = "http://www.w3.org/ns/sparql-service-description#";
@@ -187,9 +461,19 @@ public class DatasetGraphCreator {
 
 		logger.debug("Execution strategy: {} {}", strategy, op.toString());
 		if (t != null) {
+			FacadeXGraphBuilder builder = null;
 			try {
 
-				FacadeXGraphBuilder builder;
+				if (PropertyUtils.getBooleanProperty(p, IRIArgument.VIRTUAL)) {
+					dg = t instanceof VirtualTriplifier ? ((VirtualTriplifier) t).virtualDatasetGraph(p) : null;
+					if (dg != null) {
+						logger.trace("Virtual graph: {}", p);
+						// Committed and ended by the caller, as the graphs of the builders
+						dg.begin(ReadWrite.WRITE);
+						return dg;
+					}
+					logger.warn("Virtual graphs are not supported by triplifier {} with these options", t.getClass().getName());
+				}
 				if (strategy == 1) {
 					logger.trace("Executing: {} [strategy={}]", p, strategy);
 					builder = new TripleFilteringFacadeXGraphBuilder(resourceId, op, p);
@@ -200,6 +484,9 @@ public class DatasetGraphCreator {
 				t.triplify(p, builder);
 				dg = builder.getDatasetGraph();
 			} catch (Exception e) {
+				if (builder instanceof BaseFacadeXGraphBuilder) {
+					((BaseFacadeXGraphBuilder) builder).discard();
+				}
 				if (p.containsKey(IRIArgument.OP_SERVICE_SILENT.toString()) && p.getProperty(IRIArgument.OP_SERVICE_SILENT.toString()).equals("true")) {
 					// as per https://www.w3.org/TR/sparql11-federated-query/#serviceFailure
 					// if silent is specified "errors encountered while accessing a remote SPARQL
@@ -222,8 +509,4 @@ public class DatasetGraphCreator {
 		// logger.trace("Default graph size {}", dg.getDefaultGraph().size());
 		return dg;
 	}
-
-	private String getInMemoryCacheKey(Properties properties, Op op) {
-		return properties.toString() + op.toString();
-	}
 }
@@ -26,15 +26,7 @@ public abstract class FXWorker<T extends Op> {
 
 	public QueryIterator execute(T op, QueryIterator input, ExecutionContext executionContext) throws ClassNotFoundException, InvocationTargetException, InstantiationException, IllegalAccessException, NoSuchMethodException, TriplifierHTTPException, IOException, UnboundVariableException {
 
-		// extract properties from service URI
-		Properties p = new Properties();
-
-		// first extract from execution context
-		PropertyExtractor.extractPropertiesFromExecutionContext(executionContext, p);
-
-		//then, from opservice (so that can be overwritten)
-		extractProperties(p, op);
-		//PropertyExtractor.extractPropertiesFromOp(opService, p);
+		Properties p = getProperties(op, executionContext);
 
 		// guess triplifier
 		Triplifier t = PropertyExtractor.getTriplifier(p, tr);
@@ -62,6 +54,33 @@ public abstract class FXWorker<T extends Op> {
 		return execute(op, input, executionContext, dg, p);
 	}
 
+	public Properties getProperties(T op, ExecutionContext executionContext) throws UnboundVariableException {
+		// extract properties from service URI
+		Properties p = new Properties();
+
+		// first extract from execution context
+		PropertyExtractor.extractPropertiesFromExecutionContext(executionContext, p);
+
+		//then, from opservice (so that can be overwritten)
+		extractProperties(p, op);
+		//PropertyExtractor.extractPropertiesFromOp(opService, p);
+		return p;
+	}
+
+	/**
+	 * Builds the graph of the operation ahead of its execution, which then finds it in the in-memory cache of the
+	 * query.
+	 *
+	 * @param op the operation
+	 * @param p  the properties of the operation, see {@link #getProperties(Op, ExecutionContext)}
+	 */
+	public void triplify(T op, Properties p) throws ClassNotFoundException, InvocationTargetException, InstantiationException, IllegalAccessException, NoSuchMethodException, IOException {
+		Triplifier t = PropertyExtractor.getTriplifier(p, tr);
+		if (t != null) {
+			dgc.getDatasetGraph(t, p, op);
+		}
+	}
+
 	public abstract QueryIterator execute(T op, QueryIterator input, ExecutionContext executionContext, DatasetGraph dg, Properties p);
 
 	public abstract void extractProperties(Properties p, T op) throws UnboundVariableException;
@@ -16,15 +16,33 @@
 
 package io.github.sparqlanything.engine;
 
+import io.github.sparqlanything.model.IRIArgument;
+import io.github.sparqlanything.model.PropertyUtils;
 import io.github.sparqlanything.model.TriplifierHTTPException;
 import org.apache.jena.graph.Triple;
+import org.apache.jena.query.Query;
 import org.apache.jena.sparql.algebra.Op;
+import org.apache.jena.sparql.algebra.OpVars;
+import org.apache.jena.sparql.algebra.op.Op2;
 import org.apache.jena.sparql.algebra.op.OpBGP;
+import org.apache.jena.sparql.algebra.op.OpConditional;
+import org.apache.jena.sparql.algebra.op.OpDisjunction;
+import org.apache.jena.sparql.algebra.op.OpFilter;
+import org.apache.jena.sparql.algebra.op.OpJoin;
+import org.apache.jena.sparql.algebra.op.OpLeftJoin;
+import org.apache.jena.sparql.algebra.op.OpN;
+import org.apache.jena.sparql.algebra.op.OpProject;
 import org.apache.jena.sparql.algebra.op.OpPropFunc;
+import org.apache.jena.sparql.algebra.op.OpSequence;
 import org.apache.jena.sparql.algebra.op.OpService;
+import org.apache.jena.sparql.algebra.op.OpSlice;
+import org.apache.jena.sparql.algebra.op.OpUnion;
+import org.apache.jena.sparql.core.Var;
 import org.apache.jena.sparql.engine.ExecutionContext;
 import org.apache.jena.sparql.engine.QueryIterator;
 import org.apache.jena.sparql.engine.iterator.QueryIterAssign;
+import org.apache.jena.sparql.engine.iterator.QueryIterRoot;
+import org.apache.jena.sparql.engine.iterator.QueryIteratorWrapper;
 import org.apache.jena.sparql.engine.join.Join;
 import org.apache.jena.sparql.engine.main.OpExecutor;
 import org.apache.jena.sparql.engine.main.QC;
@@ -34,11 +52,65 @@ import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 public class FacadeXOpExecutor extends OpExecutor {
 
 	public final static Symbol strategy = Symbol.create("facade-x-strategy");
+	/**
+	 * The number of results needed from the FacadeX services right below a LIMIT, keyed by (identity of) the OpService
+	 */
+	public final static Symbol serviceLimits = Symbol.create("facade-x-service-limits");
+	/**
+	 * The maximum number of FacadeX services triplified concurrently, either operands of joins and unions or executions
+	 * of a postponed operation for different bindings. A value of 1 triplifies the services one after the other, as
+	 * they are executed.
+	 */
+	public final static Symbol parallelism = Symbol.create("facade-x-parallelism");
+	/**
+	 * By default, the services are triplified one after the other, on the thread executing the query. A higher value
+	 * (e.g. the number of processors, or more as triplifying a source often means waiting for it) has to be set
+	 * explicitly.
+	 */
+	public final static int DEFAULT_PARALLELISM = 1;
+	/**
+	 * The number of groups of input bindings of a postponed operation (e.g. a SERVICE whose IRI is a variable) that
+	 * are triplified and queried ahead of the results being consumed, by default twice the {@link #parallelism}.
+	 */
+	public final static Symbol prefetch = Symbol.create("facade-x-prefetch");
+	/**
+	 * The number of input bindings of a postponed SERVICE that are grouped by the source they resolve to, so that each
+	 * source is triplified and queried once for the whole group. The results are returned in the order of the input
+	 * either way. A value of 1 executes the SERVICE for each binding.
+	 */
+	public final static Symbol bindJoinBatchSize = Symbol.create("facade-x-bind-join-batch-size");
+	public final static int DEFAULT_BIND_JOIN_BATCH_SIZE = 1000;
+	/**
+	 * The FacadeX services already triplified ahead of their execution, keyed by identity
+	 */
+	private final static Symbol triplifiedServices = Symbol.create("facade-x-triplified-services");
+	/**
+	 * Set once the results of the query are wrapped, to release its resources when they are closed
+	 */
+	private final static Symbol releasedOnClose = Symbol.create("facade-x-released-on-close");
+	/**
+	 * The worker threads triplifying the services of the query ahead of their execution, shared by all its operations
+	 */
+	private final static Symbol triplificationPool = Symbol.create("facade-x-triplification-pool");
 	private static final Logger logger = LoggerFactory.getLogger(FacadeXOpExecutor.class);
 	private final FXWorkerOpService fxWorkerService;
 	private final FXWorkerOpBGP fxWorkerOpBGP;
@@ -54,6 +126,52 @@ public class FacadeXOpExecutor extends OpExecutor {
 		fxWorkerOpPropFunc = new FXWorkerOpPropFunc(triplifierRegister, dgc);
 	}
 
+	@Override
+	protected QueryIterator exec(Op op, QueryIterator input) {
+		if (level >= TOP_LEVEL || !(input instanceof QueryIterRoot)) {
+			return super.exec(op, input);
+		}
+		boolean query;
+		synchronized (execCxt.getContext()) {
+			query = !execCxt.getContext().isDefined(releasedOnClose);
+			execCxt.getContext().set(releasedOnClose, true);
+		}
+		if (!query) {
+			return super.exec(op, input);
+		}
+		return new QueryIterRelease(super.exec(op, input), execCxt);
+	}
+
+	/**
+	 * Releases the resources of the query (e.g. its temporary on disk graphs) when its results are closed, either
+	 * explicitly or after the last one.
+	 */
+	private static class QueryIterRelease extends QueryIteratorWrapper {
+		private final ExecutionContext execCxt;
+
+		private QueryIterRelease(QueryIterator qIter, ExecutionContext execCxt) {
+			super(qIter);
+			this.execCxt = execCxt;
+		}
+
+		@Override
+		protected void closeIterator() {
+			try {
+				super.closeIterator();
+			} finally {
+				ExecutorService pool;
+				synchronized (execCxt.getContext()) {
+					pool = execCxt.getContext().get(triplificationPool);
+					execCxt.getContext().remove(triplificationPool);
+				}
+				if (pool != null) {
+					pool.shutdownNow();
+				}
+				DatasetGraphCreator.release(execCxt.getContext());
+			}
+		}
+	}
+
 	protected QueryIterator execute(final OpPropFunc opPropFunc, QueryIterator input){
 		logger.trace("OpProp  {}", opPropFunc);
 		if (this.execCxt.getClass() == FacadeXExecutionContext.class) {
@@ -138,6 +256,209 @@ public class FacadeXOpExecutor extends OpExecutor {
 		return super.execute(opService, input);
 	}
 
+	@Override
+	protected QueryIterator execute(final OpJoin opJoin, QueryIterator input) {
+		triplifyConcurrently(opJoin);
+		return super.execute(opJoin, input);
+	}
+
+	@Override
+	protected QueryIterator execute(final OpSequence opSequence, QueryIterator input) {
+		triplifyConcurrently(opSequence);
+		return super.execute(opSequence, input);
+	}
+
+	@Override
+	protected QueryIterator execute(final OpLeftJoin opLeftJoin, QueryIterator input) {
+		triplifyConcurrently(opLeftJoin);
+		return super.execute(opLeftJoin, input);
+	}
+
+	@Override
+	protected QueryIterator execute(final OpConditional opConditional, QueryIterator input) {
+		triplifyConcurrently(opConditional);
+		return super.execute(opConditional, input);
+	}
+
+	@Override
+	protected QueryIterator execute(final OpUnion opUnion, QueryIterator input) {
+		triplifyConcurrently(opUnion);
+		return super.execute(opUnion, input);
+	}
+
+	@Override
+	protected QueryIterator execute(final OpDisjunction opDisjunction, QueryIterator input) {
+		triplifyConcurrently(opDisjunction);
+		return super.execute(opDisjunction, input);
+	}
+
+	/**
+	 * The operands of joins and unions are executed one after the other. The FacadeX services among them that do not
+	 * depend on the bindings of the other operands are triplified concurrently beforehand, and their execution then
+	 * finds the graphs in the in-memory cache of the query.
+	 */
+	private void triplifyConcurrently(Op op) {
+		int threads = execCxt.getContext().getInt(parallelism, DEFAULT_PARALLELISM);
+		if (threads <= 1) {
+			return;
+		}
+		Set<Op> triplified;
+		synchronized (execCxt.getContext()) {
+			triplified = execCxt.getContext().get(triplifiedServices);
+			if (triplified == null) {
+				triplified = Collections.synchronizedSet(Collections.newSetFromMap(new IdentityHashMap<>()));
+				execCxt.getContext().set(triplifiedServices, triplified);
+			}
+		}
+		List<OpService> services = new ArrayList<>();
+		collectServices(op, services);
+		// The properties of the services, as long as they do not depend on bindings
+		Map<OpService, Properties> uncorrelated = new IdentityHashMap<>();
+		Set<CacheKey> keys = new HashSet<>();
+		Set<String> ondisk = new HashSet<>();
+		for (OpService service : services) {
+			if (triplified.contains(service)) {
+				continue;
+			}
+			Properties p;
+			try {
+				p = fxWorkerService.getProperties(service, execCxt);
+			} catch (UnboundVariableException e) {
+				continue;
+			}
+			// Graphs that are not cached would be triplified again, sliced sources are never triplified as a whole
+			if (PropertyUtils.getBooleanProperty(p, IRIArgument.NO_CACHE) || PropertyUtils.getBooleanProperty(p, IRIArgument.SLICE)) {
+				continue;
+			}
+			// Only one writer at a time for each on disk graph
+			String location = PropertyUtils.getStringProperty(p, IRIArgument.ONDISK);
+			if (location != null && !ondisk.add(location)) {
+				continue;
+			}
+			if (keys.add(CacheKey.of(p, service, PropertyExtractor.detectStrategy(p, execCxt)))) {
+				uncorrelated.put(service, p);
+			}
+		}
+		if (uncorrelated.size() < 2) {
+			return;
+		}
+		logger.debug("Triplifying {} services concurrently", uncorrelated.size());
+		ExecutorService pool = getTriplificationPool(threads);
+		List<Future<?>> futures = new ArrayList<>();
+		try {
+			for (Map.Entry<OpService, Properties> e : uncorrelated.entrySet()) {
+				triplified.add(e.getKey());
+				futures.add(pool.submit(() -> {
+					fxWorkerService.triplify(e.getKey(), e.getValue());
+					return null;
+				}));
+			}
+			for (Future<?> future : futures) {
+				try {
+					future.get();
+				} catch (ExecutionException e) {
+					// The error is raised (or silenced) again when the service is executed
+					logger.debug("Cannot triplify in advance: {}", e.getCause().getMessage());
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			for (Future<?> future : futures) {
+				future.cancel(true);
+			}
+		}
+	}
+
+	/**
+	 * The pool is created with the first services triplified concurrently, and shut down when the results of the query
+	 * are closed. Idle threads terminate anyway, for queries whose results are not released.
+	 */
+	private ExecutorService getTriplificationPool(int threads) {
+		synchronized (execCxt.getContext()) {
+			ExecutorService pool = execCxt.getContext().get(triplificationPool);
+			if (pool == null) {
+				ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), r -> {
+					Thread t = new Thread(r, "sparql-anything-triplifier");
+					t.setDaemon(true);
+					return t;
+				});
+				executor.allowCoreThreadTimeOut(true);
+				pool = executor;
+				execCxt.getContext().set(triplificationPool, pool);
+			}
+			return pool;
+		}
+	}
+
+	/**
+	 * Collects the FacadeX services that are operands of joins and unions, nested in any number of them. Services
+	 * below a filter are included, as the filter does not change the graph they need. The other operands of an optional
+	 * or of a sequence are executed with (and substituted by) the bindings of the first ones, so they are only included
+	 * if they share no variables with them.
+	 */
+	private static void collectServices(Op op, List<OpService> services) {
+		if (op instanceof OpService) {
+			OpService service = (OpService) op;
+			if (service.getService().isURI() && Utils.isFacadeXURI(service.getService().getURI())) {
+				services.add(service);
+			}
+		} else if (op instanceof OpFilter) {
+			collectServices(((OpFilter) op).getSubOp(), services);
+		} else if (op instanceof OpJoin || op instanceof OpUnion) {
+			collectServices(((Op2) op).getLeft(), services);
+			collectServices(((Op2) op).getRight(), services);
+		} else if (op instanceof OpLeftJoin || op instanceof OpConditional) {
+			collectServices(((Op2) op).getLeft(), services);
+			if (Collections.disjoint(OpVars.mentionedVars(((Op2) op).getLeft()), OpVars.mentionedVars(((Op2) op).getRight()))) {
+				collectServices(((Op2) op).getRight(), services);
+			}
+		} else if (op instanceof OpSequence) {
+			Set<Var> vars = new HashSet<>();
+			for (Op o : ((OpSequence) op).getElements()) {
+				Collection<Var> mentioned = OpVars.mentionedVars(o);
+				if (vars.isEmpty() || Collections.disjoint(vars, mentioned)) {
+					collectServices(o, services);
+				}
+				vars.addAll(mentioned);
+			}
+		} else if (op instanceof OpDisjunction) {
+			for (Op o : ((OpN) op).getElements()) {
+				collectServices(o, services);
+			}
+		}
+	}
+
+	@Override
+	protected QueryIterator execute(final OpSlice opSlice, QueryIterator input) {
+		Op subOp = opSlice.getSubOp();
+		if (subOp instanceof OpProject) {
+			subOp = ((OpProject) subOp).getSubOp();
+		}
+		// Each result of the service is a result of the slice, so the service can stop after start + length results
+		if (opSlice.getLength() != Query.NOLIMIT && subOp instanceof OpService && ((OpService) subOp).getService().isURI() && Utils.isFacadeXURI(((OpService) subOp).getService().getURI())) {
+			long limit = Math.max(opSlice.getStart(), 0) + opSlice.getLength();
+			logger.trace("Limit of {}: {}", subOp, limit);
+			Map<Op, Long> limits = execCxt.getContext().get(serviceLimits);
+			if (limits == null) {
+				limits = Collections.synchronizedMap(new IdentityHashMap<>());
+				execCxt.getContext().set(serviceLimits, limits);
+			}
+			limits.put(subOp, limit);
+		}
+		return super.execute(opSlice, input);
+	}
+
+	/**
+	 * @return the number of results needed from the operation, or -1 if all of them are needed
+	 */
+	static long getLimit(ExecutionContext execCxt, Op op) {
+		Map<Op, Long> limits = execCxt.getContext().get(serviceLimits);
+		if (limits == null) {
+			return -1;
+		}
+		return limits.getOrDefault(op, -1L);
+	}
+
 	private QueryIterator catchUnboundVariableException(Op op, OpBGP opBGP, QueryIterator input, UnboundVariableException e) {
 		// Proceed with the next operation
 		OpBGP fakeBGP = Utils.extractFakePattern(opBGP);
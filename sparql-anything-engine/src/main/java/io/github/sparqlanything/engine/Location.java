@@ -49,6 +49,8 @@ public class Location {
         if(url.getProtocol().equals("http")||url.getProtocol().equals("https")){
             CloseableHttpResponse response = HTTPHelper.getInputStream(url, properties);
             if(!HTTPHelper.isSuccessful(response) ){
+                // Release the connection
+                response.close();
                 throw new IOException(response.getStatusLine().toString());
             }
             return response.getEntity().getContent();
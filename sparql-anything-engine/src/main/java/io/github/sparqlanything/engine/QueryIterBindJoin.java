@@ -0,0 +1,350 @@
+/*
+ * Copyright (c) 2023 SPARQL Anything Contributors @ http://github.com/sparql-anything
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.sparqlanything.engine;
+
+import org.apache.jena.graph.Node;
+import org.apache.jena.query.QueryCancelledException;
+import org.apache.jena.sparql.ARQConstants;
+import org.apache.jena.sparql.algebra.Op;
+import org.apache.jena.sparql.core.Var;
+import org.apache.jena.sparql.engine.ExecutionContext;
+import org.apache.jena.sparql.engine.QueryIterator;
+import org.apache.jena.sparql.engine.binding.Binding;
+import org.apache.jena.sparql.engine.binding.BindingBuilder;
+import org.apache.jena.sparql.engine.binding.BindingFactory;
+import org.apache.jena.sparql.engine.iterator.QueryIter1;
+import org.apache.jena.sparql.engine.iterator.QueryIterDefaulting;
+import org.apache.jena.sparql.engine.iterator.QueryIterPlainWrapper;
+import org.apache.jena.sparql.engine.iterator.QueryIterSingleton;
+import org.apache.jena.sparql.engine.main.QC;
+import org.apache.jena.sparql.expr.NodeValue;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Executes the Op for each input binding, substituting the variables of the binding, like
+ * {@link org.apache.jena.sparql.engine.iterator.QueryIterRepeatApply}.
+ * <p>
+ * When the variables the source of the Op depends on are known (see {@link Utils#getSourceVariables(Op)}), up to
+ * {@link FacadeXOpExecutor#bindJoinBatchSize} input bindings are read at once and grouped by the values of those
+ * variables. The Op is then substituted and executed once for each group, with all the bindings of the group as
+ * input, so that each source is triplified once. Otherwise, the Op is executed for each binding. Either way, the
+ * results are returned in the order of the input: each input binding is tagged with its position in the group, so
+ * that the results of the group are returned binding after binding.
+ * <p>
+ * A group is executed when the results of its first input binding are needed. With more than one thread, up to
+ * {@link FacadeXOpExecutor#prefetch} groups are triplified and queried ahead by a pool of worker threads, while the
+ * results are consumed. Ops postponed again within a worker are executed on that worker.
+ */
+public class QueryIterBindJoin extends QueryIter1 {
+
+	private static final Logger logger = LoggerFactory.getLogger(QueryIterBindJoin.class);
+	private static final AtomicInteger poolCounter = new AtomicInteger();
+	private static final ThreadLocal<Boolean> worker = ThreadLocal.withInitial(() -> false);
+	/**
+	 * The position of an input binding in its group, not visible in the results
+	 */
+	private static final Var INDEX = Var.alloc(ARQConstants.allocVarMarker + "bindJoinIndex");
+	private final Op op;
+	private final Set<Var> sourceVars;
+	private final int batchSize;
+	private final int threads;
+	private final int prefetch;
+	private volatile ExecutorService executor = null;
+	private final Deque<Batch> batches = new ArrayDeque<>();
+	private final Deque<Group> waiting = new ArrayDeque<>();
+	private int pending = 0;
+	private int position = 0;
+	private Iterator<Binding> current = null;
+
+	/**
+	 * @param sourceVars the variables the source of the Op depends on, or null if bindings cannot be grouped
+	 * @param batchSize  the number of input bindings grouped at once
+	 * @param threads    the number of worker threads, or 1 to execute the Op on the calling thread
+	 * @param prefetch   the number of groups executed ahead by the workers
+	 */
+	public QueryIterBindJoin(Op op, QueryIterator input, ExecutionContext execCxt, Set<Var> sourceVars, int batchSize, int threads, int prefetch) {
+		super(input, execCxt);
+		this.op = op;
+		this.sourceVars = sourceVars;
+		this.batchSize = Math.max(batchSize, 1);
+		this.threads = threads;
+		// Without workers, groups are executed when their results are needed
+		this.prefetch = threads > 1 ? Math.max(prefetch, 1) : 1;
+	}
+
+	/**
+	 * @return true if the current thread is a worker of a {@link QueryIterBindJoin}
+	 */
+	static boolean isWorker() {
+		return worker.get();
+	}
+
+	/**
+	 * The input bindings sharing the same values of the source variables.
+	 */
+	private static final class Group {
+		private final Binding source;
+		private final List<Binding> bindings = new ArrayList<>();
+		// The input bindings whose results are not returned yet
+		private int remaining = 0;
+		private Future<List<List<Binding>>> results = null;
+
+		private Group(Binding source) {
+			this.source = source;
+		}
+	}
+
+	/**
+	 * The input bindings read at once, in the order of the input, with their group and their position in it.
+	 */
+	private static final class Batch {
+		private final List<Group> groups = new ArrayList<>();
+		private final List<Integer> members = new ArrayList<>();
+	}
+
+	private Batch nextBatch() {
+		Batch batch = new Batch();
+		Map<Binding, Group> bySource = new LinkedHashMap<>();
+		int size = sourceVars == null ? 1 : batchSize;
+		for (int i = 0; i < size && getInput().hasNext(); i++) {
+			Binding binding = getInput().nextBinding();
+			Binding source = binding;
+			if (sourceVars != null) {
+				BindingBuilder builder = BindingFactory.builder();
+				for (Var var : sourceVars) {
+					if (binding.contains(var)) {
+						builder.add(var, binding.get(var));
+					}
+				}
+				source = builder.build();
+			}
+			Group group = bySource.computeIfAbsent(source, Group::new);
+			batch.groups.add(group);
+			batch.members.add(group.bindings.size());
+			group.bindings.add(binding);
+			group.remaining++;
+		}
+		logger.debug("{} bindings from {} sources", batch.groups.size(), bySource.size());
+		waiting.addAll(bySource.values());
+		return batch;
+	}
+
+	/**
+	 * Executes the Op for the group and collects the results of each input binding. Each execution has its own
+	 * context, as the iterators opened in a context are tracked in a list that is not thread safe.
+	 */
+	private List<List<Binding>> evaluate(Group group) {
+		ExecutionContext execCxt = getExecContext();
+		ExecutionContext cxt = new ExecutionContext(execCxt.getContext(), execCxt.getActiveGraph(), execCxt.getDataset(), execCxt.getExecutor());
+		if (execCxt instanceof FacadeXExecutionContext) {
+			cxt = new FacadeXExecutionContext(cxt);
+		}
+		Op op2 = QC.substitute(op, group.source);
+		List<List<Binding>> results = new ArrayList<>();
+		for (int i = 0; i < group.bindings.size(); i++) {
+			results.add(new ArrayList<>());
+		}
+		QueryIterator it;
+		if (group.bindings.size() == 1) {
+			Binding binding = group.bindings.get(0);
+			it = QC.execute(op2, QueryIterSingleton.create(binding, cxt), cxt);
+			it = new QueryIterDefaulting(it, binding, cxt);
+			try {
+				while (it.hasNext()) {
+					results.get(0).add(it.nextBinding());
+				}
+			} finally {
+				it.close();
+			}
+			return results;
+		}
+		List<Binding> indexed = new ArrayList<>();
+		for (int i = 0; i < group.bindings.size(); i++) {
+			indexed.add(BindingFactory.binding(group.bindings.get(i), INDEX, NodeValue.makeInteger(i).asNode()));
+		}
+		it = QC.execute(op2, QueryIterPlainWrapper.create(indexed.iterator(), cxt), cxt);
+		try {
+			while (it.hasNext()) {
+				Binding result = it.nextBinding();
+				Node index = result.get(INDEX);
+				if (index == null) {
+					logger.warn("Result not extending an input binding: {}", result);
+					continue;
+				}
+				BindingBuilder builder = BindingFactory.builder();
+				result.forEach((var, node) -> {
+					if (!var.equals(INDEX)) {
+						builder.add(var, node);
+					}
+				});
+				results.get(Integer.parseInt(index.getLiteralLexicalForm())).add(builder.build());
+			}
+		} finally {
+			it.close();
+		}
+		// As for a single binding, the input bindings without any result are returned as they are
+		for (int i = 0; i < group.bindings.size(); i++) {
+			if (results.get(i).isEmpty()) {
+				results.get(i).add(group.bindings.get(i));
+			}
+		}
+		return results;
+	}
+
+	/**
+	 * Submits the group of the next input binding, if it is not submitted yet, and the following ones up to
+	 * {@link #prefetch} groups whose results are not returned.
+	 */
+	private void submit() {
+		if (threads > 1 && executor == null) {
+			final int pool = poolCounter.incrementAndGet();
+			final AtomicInteger thread = new AtomicInteger();
+			executor = Executors.newFixedThreadPool(threads, r -> {
+				Thread t = new Thread(() -> {
+					worker.set(true);
+					r.run();
+				}, "postpone-" + pool + "-" + thread.incrementAndGet());
+				t.setDaemon(true);
+				return t;
+			});
+		}
+		while (pending < prefetch || batches.isEmpty() || batches.peek().groups.get(position).results == null) {
+			if (waiting.isEmpty()) {
+				// The input is read on the calling thread, which may hold its transactions
+				if (!getInput().hasNext()) {
+					return;
+				}
+				batches.add(nextBatch());
+			}
+			final Group group = waiting.poll();
+			pending++;
+			if (executor == null) {
+				group.results = CompletableFuture.completedFuture(evaluate(group));
+			} else {
+				try {
+					group.results = executor.submit(() -> evaluate(group));
+				} catch (RejectedExecutionException e) {
+					// The workers are stopped by a cancellation
+					throw new QueryCancelledException();
+				}
+			}
+		}
+	}
+
+	@Override
+	protected boolean hasNextBinding() {
+		while (current == null || !current.hasNext()) {
+			submit();
+			if (batches.isEmpty()) {
+				shutdown();
+				return false;
+			}
+			Batch batch = batches.peek();
+			Group group = batch.groups.get(position);
+			int member = batch.members.get(position);
+			try {
+				List<List<Binding>> results = group.results.get();
+				current = results.get(member).iterator();
+				// The results of a binding are returned once
+				results.set(member, null);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				shutdown();
+				throw new RuntimeException(e);
+			} catch (CancellationException e) {
+				shutdown();
+				throw new QueryCancelledException();
+			} catch (ExecutionException e) {
+				shutdown();
+				if (e.getCause() instanceof RuntimeException) {
+					throw (RuntimeException) e.getCause();
+				}
+				throw new RuntimeException(e.getCause());
+			}
+			if (--group.remaining == 0) {
+				pending--;
+			}
+			if (++position == batch.groups.size()) {
+				batches.poll();
+				position = 0;
+			}
+		}
+		return true;
+	}
+
+	@Override
+	protected Binding moveToNextBinding() {
+		return current.next();
+	}
+
+	private void shutdown() {
+		if (executor != null) {
+			logger.trace("Shutting down the workers");
+			for (Batch batch : batches) {
+				for (Group group : batch.groups) {
+					if (group.results != null) {
+						group.results.cancel(true);
+					}
+				}
+			}
+			executor.shutdownNow();
+		}
+		batches.clear();
+		waiting.clear();
+		pending = 0;
+		position = 0;
+	}
+
+	/**
+	 * Called from another thread: only the workers are stopped, and the groups not executed yet are cancelled, so that
+	 * the iterator thread stops waiting for them. The state of the iterator is left to that thread, which closes it.
+	 */
+	@Override
+	protected void requestSubCancel() {
+		ExecutorService executor = this.executor;
+		if (executor != null) {
+			for (Runnable task : executor.shutdownNow()) {
+				if (task instanceof Future) {
+					((Future<?>) task).cancel(true);
+				}
+			}
+		}
+	}
+
+	@Override
+	protected void closeSubIterator() {
+		shutdown();
+	}
+}
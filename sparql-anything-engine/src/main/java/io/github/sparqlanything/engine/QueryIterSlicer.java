@@ -17,6 +17,11 @@
 package io.github.sparqlanything.engine;
 
 import io.github.sparqlanything.model.*;
+import org.apache.jena.atlas.data.BagFactory;
+import org.apache.jena.atlas.data.DataBag;
+import org.apache.jena.atlas.data.ThresholdPolicyFactory;
+import org.apache.jena.atlas.iterator.Iter;
+import org.apache.jena.graph.NodeFactory;
 import org.apache.jena.sparql.algebra.Op;
 import org.apache.jena.sparql.algebra.op.OpService;
 import org.apache.jena.sparql.core.DatasetGraph;
@@ -28,19 +33,56 @@ import org.apache.jena.sparql.engine.iterator.QueryIter;
 import org.apache.jena.sparql.engine.iterator.QueryIterNullIterator;
 import org.apache.jena.sparql.engine.iterator.QueryIterPlainWrapper;
 import org.apache.jena.sparql.engine.main.QC;
+import org.apache.jena.sparql.system.SerializationFactoryFinder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
+/**
+ * Executes the Op on each slice of the resource.
+ * <p>
+ * By default, slices are triplified and queried one after the other. With the option slice.threads greater than 1,
+ * up to that number of slices are processed concurrently by a pool of worker threads, and at most twice as many are
+ * kept in flight, so that memory stays bounded. Slices that depend on the state of the slicer (see
+ * {@link Slice#isIndependent()}) are triplified on the calling thread and only queried by the workers. With the option
+ * slice.ordered set to false, the results of a slice are returned as soon as it completes, otherwise in slice order.
+ * <p>
+ * The input bindings are replayed for each slice. They are read while the first slice is queried, so that results
+ * are returned without waiting for the whole input, and kept in a {@link DataBag}, which spills them to disk when
+ * they are more than slice.spill-threshold.
+ * <p>
+ * With the option slice.batch-size greater than 1, consecutive slices are triplified together with one builder and
+ * one transaction, each in its own graph, and then queried one at a time on a view of their graph, so that the cost of
+ * setting up the triplification is shared by the slices of a batch.
+ * <p>
+ * When the service is right below a LIMIT (see {@link FacadeXOpExecutor}), no more slices are read once enough results
+ * have been returned, fewer slices are triplified ahead in parallel, and the slices iterator is closed, releasing the
+ * input stream if the slicer supports it.
+ */
 public class QueryIterSlicer extends QueryIter {
 
 	private static final Logger logger = LoggerFactory.getLogger(QueryIterSlicer.class);
-	final List<Binding> elements;
+	private static final AtomicInteger poolCounter = new AtomicInteger();
+	private static final String BATCH_GRAPH_SUFFIX = "#slice-";
+	final DataBag<Binding> elements;
+	private boolean inputDrained = false;
+	private boolean started = false;
 	private final Iterator<Slice> iterator;
 	private final ExecutionContext execCxt;
 	private final String resourceId;
@@ -49,6 +91,17 @@ public class QueryIterSlicer extends QueryIter {
 	private final QueryIterator input;
 	private QueryIterator current = null;
 	private final Properties p;
+	private final Properties builderProperties;
+	private final Integer strategy;
+	private final int threads;
+	private final boolean ordered;
+	private final int batchSize;
+	private final Deque<DatasetGraph> triplified = new ArrayDeque<>();
+	private ExecutorService executor = null;
+	private CompletionService<List<Binding>> completion = null;
+	private final Deque<Future<List<Binding>>> pending = new ArrayDeque<>();
+	private final long limit;
+	private long produced = 0;
 
 	public QueryIterSlicer(ExecutionContext execCxt, QueryIterator input, Triplifier t, Properties properties, Op op) throws TriplifierHTTPException, IOException {
 		super(execCxt);
@@ -57,12 +110,10 @@ public class QueryIterSlicer extends QueryIter {
 		final Iterable<Slice> it = slicer.slice(p);
 		this.input = input;
 
-		elements = new ArrayList<>();
-		while (input.hasNext()) {
-			elements.add(input.nextBinding());
-		}
+		elements = BagFactory.newDefaultBag(ThresholdPolicyFactory.count(PropertyUtils.getIntegerProperty(p, IRIArgument.SLICE_SPILL_THRESHOLD)), SerializationFactoryFinder.bindingSerializationFactory());
 
 		this.iterator = it.iterator();
+		this.limit = FacadeXOpExecutor.getLimit(execCxt, op);
 		this.execCxt = execCxt;
 		this.resourceId = Triplifier.getResourceId(p);
 		if(op instanceof OpService){
@@ -70,45 +121,191 @@ public class QueryIterSlicer extends QueryIter {
 		}else{
 			this.op = op;
 		}
+		this.strategy = PropertyExtractor.detectStrategy(p, execCxt);
+		int threads = PropertyUtils.getIntegerProperty(p, IRIArgument.SLICE_THREADS);
+		int batchSize = PropertyUtils.getIntegerProperty(p, IRIArgument.SLICE_BATCH_SIZE);
+		Properties builderProperties = p;
+		if (p.containsKey(IRIArgument.ONDISK_SPILL.toString()) || p.containsKey(IRIArgument.PIPELINE.toString())) {
+			// Slices are small enough to be kept in memory, and batches are views over the graphs of the builder.
+			// Neither is a slice worth an indexing thread.
+			builderProperties = new Properties();
+			builderProperties.putAll(p);
+			builderProperties.remove(IRIArgument.ONDISK_SPILL.toString());
+			builderProperties.remove(IRIArgument.PIPELINE.toString());
+		}
+		if (p.containsKey(IRIArgument.ONDISK.toString())) {
+			// Each slice is a small write, which is not worth a bulk load
+			if (!p.containsKey(IRIArgument.ONDISK_LOADER.toString())) {
+				builderProperties = new Properties();
+				builderProperties.putAll(p);
+				builderProperties.setProperty(IRIArgument.ONDISK_LOADER.toString(), "none");
+			}
+			// Slices would compete for the write transaction of the same TDB2 location
+			if (threads > 1) {
+				logger.warn("{} is ignored when {} is set", IRIArgument.SLICE_THREADS, IRIArgument.ONDISK);
+				threads = 1;
+			}
+			// Views over the graphs of a TDB2 would escape its transactions
+			if (batchSize > 1) {
+				logger.warn("{} is ignored when {} is set", IRIArgument.SLICE_BATCH_SIZE, IRIArgument.ONDISK);
+				batchSize = 1;
+			}
+		}
+		this.builderProperties = builderProperties;
+		this.threads = threads;
+		this.batchSize = Math.max(batchSize, 1);
+		this.ordered = PropertyUtils.getBooleanProperty(p, IRIArgument.SLICE_ORDERED);
+	}
+
+	private BaseFacadeXGraphBuilder newBuilder() {
+		logger.trace("Executing: {} [strategy={}]", p, strategy);
+		if (strategy == 1) {
+			return new TripleFilteringFacadeXGraphBuilder(resourceId, op, builderProperties);
+		} else {
+			return new BaseFacadeXGraphBuilder(builderProperties);
+		}
+	}
+
+	/**
+	 * Triplifies the next batch of slices. Each slice is triplified before moving to the next one, since dependent
+	 * slices are invalidated when the slicer moves on.
+	 *
+	 * @param slices the slices, of which at most slice.batch-size are consumed
+	 * @return a DatasetGraph for each slice of the batch
+	 */
+	private List<DatasetGraph> triplify(Iterator<Slice> slices) {
+		BaseFacadeXGraphBuilder builder = newBuilder();
+		int size = 0;
+		while (size < batchSize && slices.hasNext()) {
+			Slice slice = slices.next();
+			logger.debug("Executing on slice: {}", slice.iteration());
+			if (batchSize > 1) {
+				builder.setGraphSuffix(BATCH_GRAPH_SUFFIX + size);
+			}
+			slicer.triplify(slice, p, builder);
+			size++;
+		}
+		builder.setGraphSuffix(null);
+		DatasetGraph dg = builder.getDatasetGraph();
+		dg.commit();
+		dg.end();
+		if (batchSize == 1) {
+			return Collections.singletonList(dg);
+		}
+		List<DatasetGraph> views = new ArrayList<>(size);
+		for (int i = 0; i < size; i++) {
+			views.add(DatasetGraphFactory.createGeneral());
+		}
+		dg.listGraphNodes().forEachRemaining(g -> {
+			String uri = g.isURI() ? g.getURI() : "";
+			int at = uri.lastIndexOf(BATCH_GRAPH_SUFFIX);
+			if (at < 0) {
+				return;
+			}
+			// The view has the same graphs the slice would have if triplified on its own
+			views.get(Integer.parseInt(uri.substring(at + BATCH_GRAPH_SUFFIX.length()))).addGraph(NodeFactory.createURI(uri.substring(0, at)), dg.getGraph(g));
+		});
+		for (DatasetGraph view : views) {
+			view.setDefaultGraph(view.getUnionGraph());
+		}
+		return views;
+	}
+
+	/**
+	 * @return the input bindings, read while they are consumed the first time
+	 */
+	private Iterator<Binding> inputBindings() {
+		if (!started) {
+			started = true;
+			return new Iterator<>() {
+				@Override
+				public boolean hasNext() {
+					if (inputDrained) {
+						return false;
+					}
+					inputDrained = !input.hasNext();
+					return !inputDrained;
+				}
+
+				@Override
+				public Binding next() {
+					Binding b = input.nextBinding();
+					elements.add(b);
+					return b;
+				}
+			};
+		}
+		drainInput();
+		// Obtaining an iterator over a spilled bag is not thread safe
+		synchronized (elements) {
+			return elements.iterator();
+		}
+	}
+
+	private void drainInput() {
+		started = true;
+		if (!inputDrained) {
+			while (input.hasNext()) {
+				elements.add(input.nextBinding());
+			}
+			inputDrained = true;
+			logger.debug("Input bindings: {}", elements.size());
+		}
+	}
+
+	private QueryIterator execute(DatasetGraph dg, Iterator<Binding> bindings) {
+		Utils.ensureReadingTxn(dg);
+		logger.debug("Executing on next slice ({})", dg.size());
+		FacadeXExecutionContext ec = Utils.getFacadeXExecutionContext(execCxt, p, dg);
+		logger.trace("Op {}", op);
+		logger.trace("OpName {}", op.getName());
+		/**
+		 * input needs to be reset before each execution, otherwise the executor will skip subsequent executions
+		 * since input bindings have been flushed!
+		 */
+		QueryIterator cloned;
+		cloned = QueryIterPlainWrapper.create(bindings);
+		return QC.execute(op, cloned, ec);
+	}
+
+	/**
+	 * Executes the Op on the graph on the current (worker) thread and collects the results, so that the read
+	 * transaction can be ended on the thread that started it.
+	 */
+	private List<Binding> evaluate(List<DatasetGraph> dgs) {
+		List<Binding> results = new ArrayList<>();
+		for (DatasetGraph dg : dgs) {
+			results.addAll(evaluate(dg));
+		}
+		return results;
+	}
+
+	private List<Binding> evaluate(DatasetGraph dg) {
+		List<Binding> results = new ArrayList<>();
+		QueryIterator it = execute(dg, inputBindings());
+		try {
+			while (it.hasNext()) {
+				results.add(it.nextBinding());
+			}
+		} finally {
+			it.close();
+			dg.end();
+		}
+		return results;
 	}
 
 	@Override
 	protected boolean hasNextBinding() {
 		logger.trace("hasNextBinding? ");
 		logger.debug("current: {}", current != null ? current.hasNext() : "null");
+		if (limit >= 0 && produced >= limit) {
+			logger.debug("Limit reached: {}", limit);
+			shutdown();
+			input.cancel();
+			return false;
+		}
 		while (current == null || !current.hasNext()) {
-			if (iterator.hasNext()) {
-				Slice slice = iterator.next();
-				logger.debug("Executing on slice: {}", slice.iteration());
-				// Execute and set current
-				FacadeXGraphBuilder builder;
-				Integer strategy = PropertyExtractor.detectStrategy(p, execCxt);
-				if (strategy == 1) {
-					logger.trace("Executing: {} [strategy={}]", p, strategy);
-					builder = new TripleFilteringFacadeXGraphBuilder(resourceId, op, p);
-				} else {
-					logger.trace("Executing: {} [strategy={}]", p, strategy);
-					builder = new BaseFacadeXGraphBuilder(p);
-				}
-				//FacadeXGraphBuilder builder = new TripleFilteringFacadeXGraphBuilder(resourceId, opService.getSubOp(), p);
-				slicer.triplify(slice, p, builder);
-				DatasetGraph dg = builder.getDatasetGraph();
-				dg.commit();
-				dg.end();
-
-				Utils.ensureReadingTxn(dg);
-				logger.debug("Executing on next slice: {} ({})", slice.iteration(), dg.size());
-//				FacadeXExecutionContext ec = new FacadeXExecutionContext(new ExecutionContext(execCxt.getContext(), dg.getDefaultGraph(), dg, execCxt.getExecutor()));
-				FacadeXExecutionContext ec = Utils.getFacadeXExecutionContext(execCxt, p, dg);
-				logger.trace("Op {}", op);
-				logger.trace("OpName {}", op.getName());
-				/**
-				 * input needs to be reset before each execution, otherwise the executor will skip subsequent executions
-				 * since input bindings have been flushed!
-				 */
-				QueryIterator cloned;
-				cloned = QueryIterPlainWrapper.create(elements.iterator());
-				current = QC.execute(op, cloned, ec);
+			if (threads > 1 ? nextParallel() : nextSequential()) {
 				logger.debug("Set current. hasNext? {}", current.hasNext());
 				if (current.hasNext()) {
 					logger.trace("Break.");
@@ -116,6 +313,7 @@ public class QueryIterSlicer extends QueryIter {
 				}
 			} else {
 				logger.trace("Slices finished");
+				shutdown();
 				/**
 				 * Input iterator can be closed
 				 */
@@ -131,19 +329,112 @@ public class QueryIterSlicer extends QueryIter {
 		return current.hasNext();
 	}
 
+	private boolean nextSequential() {
+		if (triplified.isEmpty()) {
+			if (!iterator.hasNext()) {
+				return false;
+			}
+			triplified.addAll(triplify(iterator));
+		}
+		current = execute(triplified.poll(), inputBindings());
+		return true;
+	}
+
+	private boolean nextParallel() {
+		if (executor == null) {
+			final int pool = poolCounter.incrementAndGet();
+			final AtomicInteger thread = new AtomicInteger();
+			executor = Executors.newFixedThreadPool(threads, r -> {
+				Thread t = new Thread(r, "slicer-" + pool + "-" + thread.incrementAndGet());
+				t.setDaemon(true);
+				return t;
+			});
+			if (!ordered) {
+				// In order, the results are taken from the pending futures, and a completion queue would retain them
+				completion = new ExecutorCompletionService<>(executor);
+			}
+		}
+		// Workers only replay the complete input
+		drainInput();
+		// Back-pressure: at most twice as many batches as workers are in flight, and, below a LIMIT, no more slices
+		// than the results still needed, assuming each slice has at least one
+		while (pending.size() < threads * 2 && (limit < 0 || pending.isEmpty() || produced + (long) pending.size() * batchSize < limit) && iterator.hasNext()) {
+			final Slice first = iterator.next();
+			Callable<List<Binding>> task;
+			if (first.isIndependent()) {
+				// The slices of a resource are all of the same kind
+				final List<Slice> batch = new ArrayList<>(batchSize);
+				batch.add(first);
+				while (batch.size() < batchSize && iterator.hasNext()) {
+					batch.add(iterator.next());
+				}
+				task = () -> evaluate(triplify(batch.iterator()));
+			} else {
+				// The slices may be invalidated when the slicer moves on
+				final List<DatasetGraph> dgs = triplify(Iter.concat(Iter.singleton(first), iterator));
+				task = () -> evaluate(dgs);
+			}
+			pending.add(ordered ? executor.submit(task) : completion.submit(task));
+		}
+		if (pending.isEmpty()) {
+			return false;
+		}
+		try {
+			Future<List<Binding>> next;
+			if (ordered) {
+				next = pending.poll();
+			} else {
+				next = completion.take();
+				pending.remove(next);
+			}
+			current = QueryIterPlainWrapper.create(next.get().iterator(), execCxt);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			shutdown();
+			throw new RuntimeException(e);
+		} catch (ExecutionException e) {
+			shutdown();
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw new RuntimeException(e.getCause());
+		}
+		return true;
+	}
+
+	private void shutdown() {
+		if (executor != null) {
+			for (Future<List<Binding>> f : pending) {
+				f.cancel(true);
+			}
+			pending.clear();
+			executor.shutdownNow();
+		}
+		elements.close();
+		// Releases the resource when the slices are not read to the end
+		Iter.close(iterator);
+	}
+
 	@Override
 	protected Binding moveToNextBinding() {
 		logger.trace("moveToNextBinding");
+		produced++;
 		return current.nextBinding();
 	}
 
 	@Override
 	protected void closeIterator() {
-		current.close();
+		shutdown();
+		if (current != null) {
+			current.close();
+		}
 	}
 
 	@Override
 	protected void requestCancel() {
-		current.cancel();
+		shutdown();
+		if (current != null) {
+			current.cancel();
+		}
 	}
 }
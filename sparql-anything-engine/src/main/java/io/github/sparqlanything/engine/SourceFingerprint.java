@@ -0,0 +1,148 @@
+/*
+ * Copyright (c) 2023 SPARQL Anything Contributors @ http://github.com/sparql-anything
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.sparqlanything.engine;
+
+import io.github.sparqlanything.model.HTTPHelper;
+import io.github.sparqlanything.model.IRIArgument;
+import io.github.sparqlanything.model.Triplifier;
+import org.apache.http.Header;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.util.Properties;
+
+/**
+ * Computes a fingerprint of the source of a triplification, used to detect whether a cached graph is stale.
+ * <p>
+ * Local files are identified by size and last modification time, remote resources by the ETag or Last-Modified headers
+ * returned by a HEAD request. Inline content never changes. Sources whose freshness cannot be established (e.g.
+ * commands, directories, or remote resources without validators) have no fingerprint and are never shared across
+ * queries.
+ * <p>
+ * The fingerprints used by the shared cache do not request remote resources (see {@link #ofShared(Properties, long)}).
+ */
+public class SourceFingerprint {
+
+	private static final Logger logger = LoggerFactory.getLogger(SourceFingerprint.class);
+
+	public static final String CONTENT = "content";
+
+	/**
+	 * @param properties the properties of the triplification
+	 * @return the fingerprint of the source, or null if the source cannot be fingerprinted
+	 */
+	public static String of(Properties properties) {
+		if (properties.containsKey(IRIArgument.COMMAND.toString())) {
+			return null;
+		}
+		if (properties.containsKey(IRIArgument.CONTENT.toString())) {
+			return CONTENT;
+		}
+		try {
+			URL url = getURL(properties);
+			if (url == null) {
+				return null;
+			}
+			return ofURL(url, properties);
+		} catch (IOException | URISyntaxException e) {
+			logger.debug("Cannot fingerprint the source: {}", e.getMessage());
+			return null;
+		}
+	}
+
+	/**
+	 * The fingerprint of a source for the shared cache. Remote resources are not requested: their fingerprint is the
+	 * current period of the given length, so that their graphs are shared for at most that time.
+	 *
+	 * @param properties the properties of the triplification
+	 * @param remoteTtl  how long the graphs of remote resources are shared, in milliseconds, 0 to not share them
+	 * @return the fingerprint of the source, or null if its graph is not to be shared
+	 */
+	public static String ofShared(Properties properties, long remoteTtl) {
+		if (!properties.containsKey(IRIArgument.COMMAND.toString()) && !properties.containsKey(IRIArgument.CONTENT.toString())) {
+			try {
+				URL url = getURL(properties);
+				if (url != null && (url.getProtocol().equals("http") || url.getProtocol().equals("https"))) {
+					if (remoteTtl <= 0 || !properties.getProperty(HTTPHelper.HTTPMETHOD, "GET").equalsIgnoreCase("GET")) {
+						return null;
+					}
+					return "period:" + System.currentTimeMillis() / remoteTtl;
+				}
+			} catch (IOException e) {
+				logger.debug("Cannot fingerprint the source: {}", e.getMessage());
+				return null;
+			}
+		}
+		return of(properties);
+	}
+
+	private static URL getURL(Properties properties) throws IOException {
+		if (properties.containsKey(IRIArgument.FROM_ARCHIVE.toString())) {
+			return Triplifier.instantiateURL(properties.getProperty(IRIArgument.FROM_ARCHIVE.toString()));
+		}
+		return Triplifier.getLocation(properties);
+	}
+
+	private static String ofURL(URL url, Properties properties) throws IOException, URISyntaxException {
+		switch (url.getProtocol()) {
+			case "file":
+				return ofFile(new File(url.toURI()));
+			case "http":
+			case "https":
+				return ofHTTP(url, properties);
+			default:
+				return null;
+		}
+	}
+
+	private static String ofFile(File file) {
+		if (!file.isFile()) {
+			return null;
+		}
+		return "file:" + file.length() + ":" + file.lastModified();
+	}
+
+	private static String ofHTTP(URL url, Properties properties) throws IOException {
+		String method = properties.getProperty(HTTPHelper.HTTPMETHOD, "GET");
+		if (!method.equalsIgnoreCase("GET")) {
+			// Only safe requests can be reused
+			return null;
+		}
+		Properties head = new Properties();
+		head.putAll(properties);
+		head.setProperty(HTTPHelper.HTTPMETHOD, "HEAD");
+		try (CloseableHttpResponse response = HTTPHelper.getInputStream(url, head)) {
+			if (!HTTPHelper.isSuccessful(response)) {
+				return null;
+			}
+			Header etag = response.getFirstHeader("ETag");
+			if (etag != null) {
+				return "etag:" + etag.getValue();
+			}
+			Header lastModified = response.getFirstHeader("Last-Modified");
+			if (lastModified != null) {
+				return "last-modified:" + lastModified.getValue();
+			}
+			return null;
+		}
+	}
+}
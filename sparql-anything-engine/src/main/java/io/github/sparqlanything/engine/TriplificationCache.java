@@ -0,0 +1,271 @@
+/*
+ * Copyright (c) 2023 SPARQL Anything Contributors @ http://github.com/sparql-anything
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.sparqlanything.engine;
+
+import io.github.sparqlanything.model.OpComponentsAnalyser;
+import org.apache.jena.graph.Node;
+import org.apache.jena.query.ARQ;
+import org.apache.jena.sparql.core.DatasetGraph;
+import org.apache.jena.sparql.util.Context;
+import org.apache.jena.sparql.util.Symbol;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * A process-wide cache of triplified graphs, shared by all the queries executed in the same JVM.
+ * <p>
+ * The cache is bounded by an estimate of the heap used by the cached graphs (see {@link #estimateSize(DatasetGraph)}).
+ * When the budget is exceeded, entries are evicted according to the configured policy (least recently used or least
+ * frequently used). Each entry records the fingerprint of the source it was built from (see {@link SourceFingerprint}),
+ * so that the entry is discarded as soon as the source changes. Remote sources are not requested to check whether they
+ * changed: their graphs are only shared for the time set with {@link #remoteTtl}.
+ * <p>
+ * The cache is process-wide, so it is configured globally in {@code ARQ.getContext()} with the symbols
+ * {@link #maxSize}, {@link #evictionPolicy} and {@link #remoteTtl}, when it is first used. Later changes of the global
+ * context are applied with {@link #configure(Context)}.
+ */
+public class TriplificationCache {
+
+	/**
+	 * The heap budget of the cache, in bytes. A value of 0 disables the cache.
+	 */
+	public final static Symbol maxSize = Symbol.create("facade-x-cache-max-size");
+
+	/**
+	 * The eviction policy of the cache, either {@code lru} (default) or {@code lfu}.
+	 */
+	public final static Symbol evictionPolicy = Symbol.create("facade-x-cache-eviction-policy");
+
+	/**
+	 * How long, in milliseconds, the graphs of remote (HTTP) sources are shared. A value of 0 (default) does not share
+	 * them.
+	 */
+	public final static Symbol remoteTtl = Symbol.create("facade-x-cache-remote-ttl");
+
+	/**
+	 * The average number of bytes taken in memory by a node of a triplified graph, including the indexes.
+	 */
+	public final static long AVERAGE_NODE_SIZE = 120;
+
+	/**
+	 * By default, the cache can use up to a quarter of the maximum heap.
+	 */
+	public final static long DEFAULT_MAX_SIZE = Runtime.getRuntime().maxMemory() / 4;
+
+	public final static String LRU = "lru";
+	public final static String LFU = "lfu";
+
+	private static final Logger logger = LoggerFactory.getLogger(TriplificationCache.class);
+	private static TriplificationCache instance;
+
+	private final Map<CacheKey, Entry> entries = new HashMap<>();
+	private long budget = DEFAULT_MAX_SIZE;
+	private String policy = LRU;
+	private long ttl = 0;
+	private long size = 0;
+	private long clock = 0;
+
+	public static synchronized TriplificationCache getInstance() {
+		if (instance == null) {
+			instance = new TriplificationCache();
+			instance.configure(ARQ.getContext());
+		}
+		return instance;
+	}
+
+	/**
+	 * Applies the budget, the eviction policy and the time to live of remote sources defined in the context, if any.
+	 *
+	 * @param context the global context
+	 */
+	public synchronized void configure(Context context) {
+		budget = context.getLong(maxSize, DEFAULT_MAX_SIZE);
+		ttl = context.getLong(remoteTtl, 0L);
+		String p = context.getAsString(evictionPolicy, LRU);
+		if (!p.equals(LRU) && !p.equals(LFU)) {
+			logger.warn("Unknown eviction policy {}, using {}", p, LRU);
+			p = LRU;
+		}
+		policy = p;
+		evict();
+	}
+
+	public synchronized boolean isEnabled() {
+		return budget > 0;
+	}
+
+	/**
+	 * @return how long the graphs of remote sources are shared, in milliseconds
+	 */
+	public synchronized long getRemoteTtl() {
+		return ttl;
+	}
+
+	/**
+	 * Returns the graph cached with the given key, provided that it was built from a source with the given fingerprint.
+	 * An entry built from a different version of the source is removed.
+	 * <p>
+	 * If there is no entry for the key and an analyser is given, a graph built from the same source for a more general
+	 * operation (or a graph of the whole source) is returned instead, as it contains all the triples the operation needs.
+	 *
+	 * @param key         the cache key
+	 * @param fingerprint the current fingerprint of the source
+	 * @param analyser    the components of the operation, or null if only an exact match can be used
+	 * @return the cached graph, or null
+	 */
+	public synchronized DatasetGraph get(CacheKey key, String fingerprint, OpComponentsAnalyser analyser) {
+		Entry entry = entries.get(key);
+		if (entry != null && !entry.fingerprint.equals(fingerprint)) {
+			logger.debug("Source changed, discarding cached graph");
+			remove(key);
+			entry = null;
+		}
+		if (entry == null && analyser != null) {
+			entry = findCovering(key, fingerprint, analyser);
+		}
+		if (entry == null) {
+			return null;
+		}
+		entry.lastAccess = ++clock;
+		entry.hits++;
+		return entry.datasetGraph;
+	}
+
+	private Entry findCovering(CacheKey key, String fingerprint, OpComponentsAnalyser analyser) {
+		Entry found = null;
+		for (Map.Entry<CacheKey, Entry> e : entries.entrySet()) {
+			Entry candidate = e.getValue();
+			if (!e.getKey().getPropertiesDigest().equals(key.getPropertiesDigest()) || !candidate.fingerprint.equals(fingerprint)) {
+				continue;
+			}
+			// Prefer the smallest graph
+			if (found != null && found.estimatedSize <= candidate.estimatedSize) {
+				continue;
+			}
+			if (candidate.analyser == null || candidate.analyser.covers(analyser)) {
+				found = candidate;
+			}
+		}
+		if (found != null) {
+			logger.debug("Reusing a cached graph built for a more general operation");
+		}
+		return found;
+	}
+
+	/**
+	 * Caches a graph.
+	 *
+	 * @param key          the cache key
+	 * @param fingerprint  the fingerprint of the source
+	 * @param datasetGraph the graph
+	 * @param analyser     the components of the operation the graph was filtered with, or null if the graph contains the
+	 *                     whole source
+	 */
+	public synchronized void put(CacheKey key, String fingerprint, DatasetGraph datasetGraph, OpComponentsAnalyser analyser) {
+		if (!isEnabled()) {
+			return;
+		}
+		long estimatedSize = estimateSize(datasetGraph);
+		if (estimatedSize > budget) {
+			logger.debug("Graph too large for the cache ({} > {} bytes)", estimatedSize, budget);
+			return;
+		}
+		remove(key);
+		Entry entry = new Entry(datasetGraph, fingerprint, estimatedSize, analyser);
+		entry.lastAccess = ++clock;
+		entries.put(key, entry);
+		size += estimatedSize;
+		logger.debug("Graph added to the shared cache ({} bytes, {} bytes in use)", estimatedSize, size);
+		evict();
+	}
+
+	public synchronized void remove(CacheKey key) {
+		Entry entry = entries.remove(key);
+		if (entry != null) {
+			size -= entry.estimatedSize;
+		}
+	}
+
+	public synchronized void clear() {
+		entries.clear();
+		size = 0;
+	}
+
+	/**
+	 * @return the estimated number of bytes taken by the cached graphs
+	 */
+	public synchronized long getSize() {
+		return size;
+	}
+
+	private void evict() {
+		while (size > budget && !entries.isEmpty()) {
+			CacheKey victim = null;
+			Entry victimEntry = null;
+			for (Map.Entry<CacheKey, Entry> e : entries.entrySet()) {
+				if (victimEntry == null || isPreferredVictim(e.getValue(), victimEntry)) {
+					victim = e.getKey();
+					victimEntry = e.getValue();
+				}
+			}
+			logger.debug("Evicting cached graph ({} bytes)", victimEntry.estimatedSize);
+			remove(victim);
+		}
+	}
+
+	private boolean isPreferredVictim(Entry candidate, Entry current) {
+		if (policy.equals(LFU) && candidate.hits != current.hits) {
+			return candidate.hits < current.hits;
+		}
+		return candidate.lastAccess < current.lastAccess;
+	}
+
+	/**
+	 * Estimates the heap used by a dataset graph as the number of triples times the size of three nodes.
+	 *
+	 * @param dg the dataset graph
+	 * @return the estimated size in bytes
+	 */
+	public static long estimateSize(DatasetGraph dg) {
+		long triples = dg.getDefaultGraph().size();
+		Iterator<Node> graphs = dg.listGraphNodes();
+		while (graphs.hasNext()) {
+			triples += dg.getGraph(graphs.next()).size();
+		}
+		return triples * 3 * AVERAGE_NODE_SIZE;
+	}
+
+	private static class Entry {
+		private final DatasetGraph datasetGraph;
+		private final String fingerprint;
+		private final long estimatedSize;
+		private final OpComponentsAnalyser analyser;
+		private long lastAccess;
+		private long hits = 0;
+
+		private Entry(DatasetGraph datasetGraph, String fingerprint, long estimatedSize, OpComponentsAnalyser analyser) {
+			this.datasetGraph = datasetGraph;
+			this.fingerprint = fingerprint;
+			this.estimatedSize = estimatedSize;
+			this.analyser = analyser;
+		}
+	}
+}
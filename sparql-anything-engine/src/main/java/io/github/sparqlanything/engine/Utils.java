@@ -27,6 +27,7 @@ import org.apache.jena.sparql.algebra.Op;
 import org.apache.jena.sparql.algebra.op.OpBGP;
 import org.apache.jena.sparql.algebra.op.OpGraph;
 import org.apache.jena.sparql.algebra.op.OpPropFunc;
+import org.apache.jena.sparql.algebra.op.OpService;
 import org.apache.jena.sparql.algebra.op.OpTable;
 import org.apache.jena.sparql.algebra.table.TableUnit;
 import org.apache.jena.sparql.core.BasicPattern;
@@ -40,13 +41,16 @@ import org.apache.jena.sparql.engine.iterator.QueryIterRepeatApply;
 import org.apache.jena.sparql.engine.iterator.QueryIterSingleton;
 import org.apache.jena.sparql.engine.main.QC;
 import org.apache.jena.sparql.pfunction.PropFuncArg;
+import org.apache.jena.tdb2.DatabaseMgr;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Properties;
+import java.util.Set;
 
 public class Utils {
 
@@ -91,6 +95,15 @@ public class Utils {
 
 	static QueryIterator postpone(final Op op, QueryIterator input, ExecutionContext execCxt) {
 //		logger.trace("is variable: {}", opService.getService());
+		int threads = execCxt.getContext().getInt(FacadeXOpExecutor.parallelism, FacadeXOpExecutor.DEFAULT_PARALLELISM);
+		if (threads <= 1 || QueryIterBindJoin.isWorker()) {
+			threads = 1;
+		}
+		int batchSize = execCxt.getContext().getInt(FacadeXOpExecutor.bindJoinBatchSize, FacadeXOpExecutor.DEFAULT_BIND_JOIN_BATCH_SIZE);
+		Set<Var> sourceVars = batchSize > 1 ? getSourceVariables(op) : null;
+		if (threads > 1 || sourceVars != null) {
+			return new QueryIterBindJoin(op, input, execCxt, sourceVars, batchSize, threads, execCxt.getContext().getInt(FacadeXOpExecutor.prefetch, threads * 2));
+		}
 		// Postpone to next iteration
 		return new QueryIterRepeatApply(input, execCxt) {
 			@Override
@@ -104,6 +117,31 @@ public class Utils {
 		};
 	}
 
+	/**
+	 * @return the variables the source of a FacadeX service depends on, that is the variable of the IRI and the
+	 * variables of fx:properties, or null if the operation is not a SERVICE
+	 */
+	static Set<Var> getSourceVariables(Op op) {
+		if (!(op instanceof OpService)) {
+			return null;
+		}
+		OpService opService = (OpService) op;
+		Set<Var> vars = new LinkedHashSet<>();
+		if (opService.getService().isVariable()) {
+			vars.add(Var.alloc(opService.getService()));
+		}
+		FXBGPFinder vis = new FXBGPFinder();
+		opService.getSubOp().visit(vis);
+		if (vis.getBGP() != null) {
+			for (Triple t : vis.getBGP().getPattern()) {
+				if (isPropertyOp(t.getSubject()) && t.getObject().isVariable()) {
+					vars.add(Var.alloc(t.getObject()));
+				}
+			}
+		}
+		return vars;
+	}
+
 	static List<Triple> getFacadeXMagicPropertyTriples(BasicPattern e) {
 	   List<Triple> result = new ArrayList<>();
 	   e.forEach(t -> {
@@ -171,7 +209,8 @@ public class Utils {
 	}
 
 	public static  ExecutionContext getNewExecutionContext(ExecutionContext execCxt, Properties p, DatasetGraph dg) {
-		if (p.containsKey(IRIArgument.ONDISK.toString())) {
+		// Also graphs moved to disk with ondisk.spill
+		if (DatabaseMgr.isTDB2(dg)) {
 			return new ExecutionContext(execCxt.getContext(), dg.getUnionGraph(), dg, execCxt.getExecutor());
 		} else {
 			return new FacadeXExecutionContext(new ExecutionContext(execCxt.getContext(), dg.getDefaultGraph(), dg, execCxt.getExecutor()));
@@ -0,0 +1,81 @@
+/*
+ * Copyright (c) 2023 SPARQL Anything Contributors @ http://github.com/sparql-anything
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.sparqlanything.engine.test;
+
+import io.github.sparqlanything.model.FacadeXGraphBuilder;
+import io.github.sparqlanything.model.IRIArgument;
+import io.github.sparqlanything.model.SPARQLAnythingConstants;
+import io.github.sparqlanything.model.Triplifier;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.BrokenBarrierException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Triplifies the content as a single value, once all the parties of the barrier are triplifying, and counts the
+ * triplifications. Triplifications can be delayed, and signal when they start.
+ */
+public class BarrierTriplifier implements Triplifier {
+
+	static volatile CyclicBarrier barrier;
+	static final AtomicInteger triplified = new AtomicInteger();
+	static volatile CountDownLatch entered;
+	static volatile long delay = 0;
+
+	@Override
+	public void triplify(Properties properties, FacadeXGraphBuilder builder) throws IOException {
+		CyclicBarrier b = barrier;
+		if (b != null) {
+			try {
+				b.await(30, TimeUnit.SECONDS);
+			} catch (InterruptedException | BrokenBarrierException | TimeoutException e) {
+				throw new IOException("Not triplified concurrently", e);
+			}
+		}
+		triplified.incrementAndGet();
+		CountDownLatch e = entered;
+		if (e != null) {
+			e.countDown();
+		}
+		if (delay > 0) {
+			try {
+				Thread.sleep(delay);
+			} catch (InterruptedException ex) {
+				throw new IOException(ex);
+			}
+		}
+		builder.addRoot(SPARQLAnythingConstants.DATA_SOURCE_ID);
+		builder.addValue(SPARQLAnythingConstants.DATA_SOURCE_ID, SPARQLAnythingConstants.ROOT_ID, 1, properties.getProperty(IRIArgument.CONTENT.toString()));
+	}
+
+	@Override
+	public Set<String> getMimeTypes() {
+		return Collections.emptySet();
+	}
+
+	@Override
+	public Set<String> getExtensions() {
+		return Collections.emptySet();
+	}
+}
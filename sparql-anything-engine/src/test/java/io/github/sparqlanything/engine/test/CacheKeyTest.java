@@ -0,0 +1,67 @@
+/*
+ * Copyright (c) 2023 SPARQL Anything Contributors @ http://github.com/sparql-anything
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.sparqlanything.engine.test;
+
+import io.github.sparqlanything.engine.CacheKey;
+import org.apache.jena.query.QueryFactory;
+import org.apache.jena.sparql.algebra.Algebra;
+import org.apache.jena.sparql.algebra.Op;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Properties;
+
+public class CacheKeyTest {
+
+	private static Op op(String where) {
+		return Algebra.compile(QueryFactory.create("PREFIX xyz: <http://sparql.xyz/facade-x/data/> SELECT * WHERE { " + where + " }"));
+	}
+
+	private static Properties properties(String... kv) {
+		Properties p = new Properties();
+		for (int i = 0; i < kv.length; i += 2) {
+			p.setProperty(kv[i], kv[i + 1]);
+		}
+		return p;
+	}
+
+	@Test
+	public void variableNamesDoNotMatter() {
+		Properties p = properties("location", "a.json");
+		Assert.assertEquals(CacheKey.of(p, op("?s xyz:name ?o FILTER(?o = 'x')"), 1), CacheKey.of(p, op("?a xyz:name ?b FILTER(?b = 'x')"), 1));
+		Assert.assertNotEquals(CacheKey.of(p, op("?s xyz:name ?o"), 1), CacheKey.of(p, op("?s xyz:age ?o"), 1));
+		// Variable co-references are preserved
+		Assert.assertNotEquals(CacheKey.of(p, op("?s ?p ?s"), 1), CacheKey.of(p, op("?s ?p ?o"), 1));
+	}
+
+	@Test
+	public void propertiesOrderDoesNotMatter() {
+		Properties p1 = properties("location", "a.json", "http.header.A", "1", "http.header.B", "2");
+		Properties p2 = properties("http.header.B", "2", "location", "a.json", "http.header.A", "1");
+		Assert.assertEquals(CacheKey.of(p1, op("?s ?p ?o"), 1), CacheKey.of(p2, op("?s ?p ?o"), 1));
+		Assert.assertEquals(CacheKey.of(p1, op("?s ?p ?o"), 1), CacheKey.of(properties("no-cache", "false", "location", "a.json", "http.header.A", "1", "http.header.B", "2"), op("?s ?p ?o"), 1));
+		Assert.assertNotEquals(CacheKey.of(p1, op("?s ?p ?o"), 1), CacheKey.of(properties("location", "b.json"), op("?s ?p ?o"), 1));
+	}
+
+	@Test
+	public void strategy() {
+		Properties p = properties("location", "a.json");
+		Assert.assertNotEquals(CacheKey.of(p, op("?s ?p ?o"), 1), CacheKey.of(p, op("?s ?p ?o"), 0));
+		// The whole source is triplified with strategy 0
+		Assert.assertEquals(CacheKey.of(p, op("?s xyz:name ?o"), 0), CacheKey.of(p, op("?s xyz:age ?o"), 0));
+	}
+}
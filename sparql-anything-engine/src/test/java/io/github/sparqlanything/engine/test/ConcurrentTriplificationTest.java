@@ -0,0 +1,252 @@
+/*
+ * Copyright (c) 2023 SPARQL Anything Contributors @ http://github.com/sparql-anything
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.sparqlanything.engine.test;
+
+import io.github.sparqlanything.engine.FacadeX;
+import io.github.sparqlanything.engine.FacadeXOpExecutor;
+import io.github.sparqlanything.engine.TriplificationCache;
+import org.apache.jena.query.ARQ;
+import org.apache.jena.query.DatasetFactory;
+import org.apache.jena.query.QueryExecution;
+import org.apache.jena.query.QueryExecutionFactory;
+import org.apache.jena.query.QueryFactory;
+import org.apache.jena.query.ResultSet;
+import org.apache.jena.query.ResultSetFormatter;
+import org.apache.jena.sparql.engine.main.QC;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.TimeUnit;
+
+public class ConcurrentTriplificationTest {
+
+	@Before
+	public void before() {
+		QC.setFactory(ARQ.getContext(), FacadeX.ExecutorFactory);
+		TriplificationCache.getInstance().clear();
+		ARQ.getContext().set(FacadeXOpExecutor.parallelism, 4);
+	}
+
+	@After
+	public void after() {
+		BarrierTriplifier.barrier = null;
+		ARQ.getContext().remove(FacadeXOpExecutor.parallelism);
+		ARQ.getContext().remove(FacadeXOpExecutor.prefetch);
+		ARQ.getContext().remove(FacadeXOpExecutor.bindJoinBatchSize);
+		BarrierTriplifier.triplified.set(0);
+		BarrierTriplifier.entered = null;
+		BarrierTriplifier.delay = 0;
+		ARQ.getContext().remove(TriplificationCache.maxSize);
+		TriplificationCache.getInstance().configure(ARQ.getContext());
+		TriplificationCache.getInstance().clear();
+	}
+
+	private static String service(String content, String var) {
+		return "SERVICE <x-sparql-anything:triplifier=" + BarrierTriplifier.class.getName() + ",content=" + content + "> { ?root" + var + " rdf:_1 ?" + var + " } ";
+	}
+
+	private static List<String> select(String where) {
+		return select(where, "ORDER BY ?a ?b ?c");
+	}
+
+	private static List<String> select(String where, String modifiers) {
+		String q = "PREFIX rdf: <http://www.w3.org/1999/02/22-rdf-syntax-ns#>\n" +
+				"PREFIX fx: <http://sparql.xyz/facade-x/ns/>\n" +
+				"SELECT ?a ?b ?c WHERE { " + where + " } " + modifiers;
+		List<String> results = new ArrayList<>();
+		try (QueryExecution qexec = QueryExecutionFactory.create(QueryFactory.create(q), DatasetFactory.createGeneral())) {
+			qexec.execSelect().forEachRemaining(qs -> results.add(qs.getLiteral("a").getString()));
+		}
+		return results;
+	}
+
+	private static final String VALUES = "VALUES ?content { \"one\" \"two\" \"three\" \"four\" } ";
+
+	@Test
+	public void join() {
+		BarrierTriplifier.barrier = new CyclicBarrier(3);
+		Assert.assertEquals(Collections.singletonList("one"), select(service("one", "a") + service("two", "b") + service("three", "c") + "FILTER(?b = \"two\" && ?c = \"three\")"));
+		Assert.assertEquals(3, BarrierTriplifier.triplified.get());
+	}
+
+	@Test
+	public void union() {
+		BarrierTriplifier.barrier = new CyclicBarrier(2);
+		Assert.assertEquals(2, select("{ " + service("one", "a") + "} UNION { " + service("two", "a") + "}").size());
+	}
+
+	@Test
+	public void optional() {
+		BarrierTriplifier.barrier = new CyclicBarrier(2);
+		Assert.assertEquals(1, select(service("one", "a") + "OPTIONAL { " + service("two", "b") + "}").size());
+		Assert.assertEquals(2, BarrierTriplifier.triplified.get());
+		// An optional part sharing variables is substituted by the bindings, so it is not triplified ahead
+		BarrierTriplifier.barrier = null;
+		Assert.assertEquals(0, select("{ " + service("three", "a") + "FILTER(?a = \"none\") } OPTIONAL { " + service("four", "a") + "}").size());
+		Assert.assertEquals(3, BarrierTriplifier.triplified.get());
+	}
+
+	@Test
+	public void pool() throws InterruptedException {
+		BarrierTriplifier.barrier = new CyclicBarrier(2);
+		for (int i = 0; i < 3; i++) {
+			Assert.assertEquals(2, select("{ " + service("one" + i, "a") + "} UNION { " + service("two" + i, "a") + "}").size());
+		}
+		// The threads of the queries are released with their results
+		for (int i = 0; i < 100 && triplifierThreads() > 0; i++) {
+			Thread.sleep(100);
+		}
+		Assert.assertEquals(0, triplifierThreads());
+	}
+
+	private static long triplifierThreads() {
+		return Thread.getAllStackTraces().keySet().stream().filter(t -> t.getName().equals("sparql-anything-triplifier")).count();
+	}
+
+	@Test
+	public void postponedServiceIRI() {
+		BarrierTriplifier.barrier = new CyclicBarrier(2);
+		Assert.assertEquals(Arrays.asList("one", "two", "three", "four"), select(VALUES + "BIND(IRI(CONCAT(\"x-sparql-anything:triplifier=" + BarrierTriplifier.class.getName() + ",content=\", ?content)) AS ?service) SERVICE ?service { ?root rdf:_1 ?a }", ""));
+	}
+
+	@Test
+	public void postponedProperties() {
+		BarrierTriplifier.barrier = new CyclicBarrier(2);
+		ARQ.getContext().set(FacadeXOpExecutor.prefetch, 2);
+		Assert.assertEquals(Arrays.asList("one", "two", "three", "four"), select("SERVICE <x-sparql-anything:triplifier=" + BarrierTriplifier.class.getName() + "> { " + VALUES + "fx:properties fx:content ?content . ?root rdf:_1 ?a }", ""));
+	}
+
+	@Test
+	public void groupedBySource() {
+		String where = "SERVICE <x-sparql-anything:triplifier=" + BarrierTriplifier.class.getName() + ",no-cache=true> { VALUES (?content ?n) { (\"one\" 1) (\"two\" 2) (\"one\" 3) (\"two\" 4) (\"one\" 5) } fx:properties fx:content ?content . ?root rdf:_1 ?a }";
+		// In the order of the input
+		Assert.assertEquals(Arrays.asList("one", "two", "one", "two", "one"), select(where, ""));
+		Assert.assertEquals(2, BarrierTriplifier.triplified.get());
+		// One source after the other
+		ARQ.getContext().set(FacadeXOpExecutor.parallelism, 1);
+		Assert.assertEquals(Arrays.asList("one", "two", "one", "two", "one"), select(where, ""));
+		Assert.assertEquals(4, BarrierTriplifier.triplified.get());
+		// One binding after the other
+		ARQ.getContext().set(FacadeXOpExecutor.bindJoinBatchSize, 1);
+		Assert.assertEquals(Arrays.asList("one", "two", "one", "two", "one"), select(where, ""));
+		Assert.assertEquals(9, BarrierTriplifier.triplified.get());
+	}
+
+	private static QueryExecution execute(String where, String vars) {
+		String q = "PREFIX rdf: <http://www.w3.org/1999/02/22-rdf-syntax-ns#>\n" +
+				"PREFIX fx: <http://sparql.xyz/facade-x/ns/>\n" +
+				"SELECT " + vars + " WHERE { SERVICE <x-sparql-anything:triplifier=" + BarrierTriplifier.class.getName() + ",no-cache=true> { " + where + " fx:properties fx:content ?content . ?root rdf:_1 ?a } }";
+		return QueryExecutionFactory.create(QueryFactory.create(q), DatasetFactory.createGeneral());
+	}
+
+	private static List<String> overlapping() {
+		List<String> results = new ArrayList<>();
+		try (QueryExecution qexec = execute("VALUES (?content ?n) { (\"one\" UNDEF) (\"one\" 1) (\"one\" UNDEF) }", "?a ?n")) {
+			qexec.execSelect().forEachRemaining(qs -> results.add((qs.contains("a") ? qs.getLiteral("a").getString() : "") + (qs.contains("n") ? qs.getLiteral("n").getString() : "")));
+		}
+		return results;
+	}
+
+	@Test
+	public void overlappingBindings() {
+		// Bindings of the same source, one extending the other, get their own results
+		List<String> grouped = overlapping();
+		Assert.assertEquals(1, BarrierTriplifier.triplified.get());
+		ARQ.getContext().set(FacadeXOpExecutor.bindJoinBatchSize, 1);
+		Assert.assertEquals(overlapping(), grouped);
+	}
+
+	@Test
+	public void lazyGroups() {
+		// Without workers, a group is executed when the results of its first binding are needed
+		ARQ.getContext().set(FacadeXOpExecutor.parallelism, 1);
+		try (QueryExecution qexec = execute("VALUES ?content { \"one\" \"two\" \"three\" }", "?a")) {
+			ResultSet results = qexec.execSelect();
+			Assert.assertEquals("one", results.next().getLiteral("a").getString());
+			Assert.assertEquals(1, BarrierTriplifier.triplified.get());
+			Assert.assertEquals(2, ResultSetFormatter.consume(results));
+		}
+		Assert.assertEquals(3, BarrierTriplifier.triplified.get());
+	}
+
+	@Test
+	public void cancel() throws Exception {
+		BarrierTriplifier.entered = new CountDownLatch(1);
+		BarrierTriplifier.delay = 10000;
+		QueryExecution qexec = execute("VALUES ?content { \"one\" \"two\" \"three\" }", "?a");
+		List<Exception> errors = new ArrayList<>();
+		Thread other = new Thread(() -> {
+			try {
+				ResultSetFormatter.consume(qexec.execSelect());
+			} catch (Exception e) {
+				errors.add(e);
+			}
+		});
+		other.start();
+		Assert.assertTrue(BarrierTriplifier.entered.await(30, TimeUnit.SECONDS));
+		qexec.abort();
+		// The workers are interrupted rather than waited for
+		other.join(5000);
+		Assert.assertFalse(other.isAlive());
+		Assert.assertEquals(1, errors.size());
+		qexec.close();
+	}
+
+	@Test
+	public void defaultParallelism() {
+		ARQ.getContext().remove(FacadeXOpExecutor.parallelism);
+		Assert.assertEquals(1, FacadeXOpExecutor.DEFAULT_PARALLELISM);
+		// The upcoming bindings are not triplified ahead
+		try (QueryExecution qexec = execute("VALUES ?content { \"one\" \"two\" \"three\" }", "?a")) {
+			qexec.execSelect().next();
+			Assert.assertEquals(1, BarrierTriplifier.triplified.get());
+		}
+	}
+
+	@Test
+	public void singleFlight() throws Exception {
+		// Only graphs being triplified are shared
+		ARQ.getContext().set(TriplificationCache.maxSize, 0L);
+		TriplificationCache.getInstance().configure(ARQ.getContext());
+		BarrierTriplifier.entered = new CountDownLatch(1);
+		BarrierTriplifier.delay = 2000;
+		String where = service("shared", "a");
+		List<String> first = new ArrayList<>();
+		Thread other = new Thread(() -> first.addAll(select(where)));
+		other.start();
+		Assert.assertTrue(BarrierTriplifier.entered.await(30, TimeUnit.SECONDS));
+		Assert.assertEquals(Collections.singletonList("shared"), select(where));
+		other.join();
+		Assert.assertEquals(Collections.singletonList("shared"), first);
+		Assert.assertEquals(1, BarrierTriplifier.triplified.get());
+	}
+
+	@Test
+	public void sequential() {
+		ARQ.getContext().set(FacadeXOpExecutor.parallelism, 1);
+		Assert.assertEquals(1, select(service("one", "a") + service("two", "b")).size());
+		Assert.assertEquals(Arrays.asList("one", "two", "three", "four"), select("SERVICE <x-sparql-anything:triplifier=" + BarrierTriplifier.class.getName() + "> { " + VALUES + "fx:properties fx:content ?content . ?root rdf:_1 ?a }", ""));
+	}
+}
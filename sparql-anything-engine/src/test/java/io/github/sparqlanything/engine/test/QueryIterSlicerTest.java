@@ -0,0 +1,150 @@
+/*
+ * Copyright (c) 2023 SPARQL Anything Contributors @ http://github.com/sparql-anything
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.sparqlanything.engine.test;
+
+import io.github.sparqlanything.engine.FacadeX;
+import org.apache.jena.query.*;
+import org.apache.jena.sparql.engine.main.QC;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+public class QueryIterSlicerTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Before
+	public void before() {
+		QC.setFactory(ARQ.getContext(), FacadeX.ExecutorFactory);
+	}
+
+	private List<String> names(File file, String extra) {
+		String q = "PREFIX xyz: <http://sparql.xyz/facade-x/data/>\n" +
+				"SELECT ?name WHERE { SERVICE <x-sparql-anything:location=" + file.getAbsolutePath() + ",slice=true,no-cache=true" + extra + "> { ?r xyz:name ?name } }";
+		List<String> names = new ArrayList<>();
+		try (QueryExecution qexec = QueryExecutionFactory.create(QueryFactory.create(q), DatasetFactory.createGeneral())) {
+			ResultSet rs = qexec.execSelect();
+			while (rs.hasNext()) {
+				names.add(rs.next().getLiteral("name").getString());
+			}
+		}
+		return names;
+	}
+
+	private File write(String name, String content) throws IOException {
+		File file = new File(folder.getRoot(), name);
+		Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+		return file;
+	}
+
+	@Test
+	public void parallelCSV() throws IOException {
+		StringBuilder sb = new StringBuilder("name,value\n");
+		for (int i = 0; i < 100; i++) {
+			sb.append("n").append(i).append(',').append(i).append('\n');
+		}
+		File csv = write("a.csv", sb.toString());
+		List<String> sequential = names(csv, ",csv.headers=true");
+		Assert.assertEquals(100, sequential.size());
+		Assert.assertEquals(sequential, names(csv, ",csv.headers=true,slice.threads=4"));
+		List<String> unordered = names(csv, ",csv.headers=true,slice.threads=4,slice.ordered=false");
+		Assert.assertEquals(100, unordered.size());
+		Assert.assertEquals(new HashSet<>(sequential), new HashSet<>(unordered));
+	}
+
+	@Test
+	public void parallelJSONArray() throws IOException {
+		StringBuilder sb = new StringBuilder("[");
+		for (int i = 0; i < 50; i++) {
+			sb.append(i > 0 ? "," : "").append("{\"name\":\"n").append(i).append("\"}");
+		}
+		File json = write("a.json", sb.append("]").toString());
+		List<String> sequential = names(json, "");
+		Assert.assertEquals(50, sequential.size());
+		Assert.assertEquals(sequential, names(json, ",slice.threads=3"));
+		Assert.assertEquals(sequential, names(json, ",slice.batch-size=7"));
+		Assert.assertEquals(sequential, names(json, ",slice.batch-size=7,slice.threads=3"));
+	}
+
+	@Test
+	public void spillInputBindings() throws IOException {
+		File csv = write("b.csv", "name\na\nb\nc\n");
+		String q = "PREFIX xyz: <http://sparql.xyz/facade-x/data/>\n" +
+				"SELECT ?x ?name WHERE { VALUES ?x { 1 2 3 4 5 } SERVICE <x-sparql-anything:location=" + csv.getAbsolutePath() + ",csv.headers=true,slice=true,no-cache=true,slice.spill-threshold=2%s> { ?r xyz:name ?name } }";
+		for (String extra : new String[]{"", ",slice.threads=2"}) {
+			Set<String> results = new HashSet<>();
+			try (QueryExecution qexec = QueryExecutionFactory.create(QueryFactory.create(String.format(q, extra)), DatasetFactory.createGeneral())) {
+				ResultSet rs = qexec.execSelect();
+				while (rs.hasNext()) {
+					QuerySolution qs = rs.next();
+					results.add(qs.getLiteral("x").getInt() + qs.getLiteral("name").getString());
+				}
+			}
+			Assert.assertEquals(15, results.size());
+			Assert.assertTrue(results.contains("1a"));
+			Assert.assertTrue(results.contains("5c"));
+		}
+	}
+
+	@Test
+	public void batches() throws IOException {
+		StringBuilder sb = new StringBuilder("name,value\n");
+		for (int i = 0; i < 25; i++) {
+			sb.append("n").append(i).append(',').append(i % 5).append('\n');
+		}
+		File csv = write("c.csv", sb.toString());
+		List<String> sequential = names(csv, ",csv.headers=true");
+		Assert.assertEquals(sequential, names(csv, ",csv.headers=true,slice.batch-size=10"));
+		Assert.assertEquals(sequential, names(csv, ",csv.headers=true,slice.batch-size=10,slice.threads=2"));
+		Assert.assertEquals(sequential, names(csv, ",csv.headers=true,slice.batch-size=10,strategy=0"));
+
+		// Slices in the same batch do not join
+		String q = "PREFIX xyz: <http://sparql.xyz/facade-x/data/>\n" +
+				"SELECT * WHERE { SERVICE <x-sparql-anything:location=" + csv.getAbsolutePath() + ",csv.headers=true,slice=true,no-cache=true,slice.batch-size=10> { ?r1 xyz:value ?v . ?r2 xyz:value ?v FILTER(?r1 != ?r2) } }";
+		try (QueryExecution qexec = QueryExecutionFactory.create(QueryFactory.create(q), DatasetFactory.createGeneral())) {
+			Assert.assertFalse(qexec.execSelect().hasNext());
+		}
+	}
+
+	@Test
+	public void limit() throws IOException {
+		// The last row cannot be parsed, the slices after the LIMIT must not be read
+		File csv = write("d.csv", "name\na\nb\nc\nd\n\"e");
+		String q = "PREFIX xyz: <http://sparql.xyz/facade-x/data/>\n" +
+				"SELECT ?name WHERE { SERVICE <x-sparql-anything:location=" + csv.getAbsolutePath() + ",csv.headers=true,slice=true,no-cache=true%s> { ?r xyz:name ?name } } LIMIT 2 OFFSET 1";
+		for (String extra : new String[]{"", ",slice.threads=2"}) {
+			List<String> names = new ArrayList<>();
+			try (QueryExecution qexec = QueryExecutionFactory.create(QueryFactory.create(String.format(q, extra)), DatasetFactory.createGeneral())) {
+				qexec.execSelect().forEachRemaining(qs -> names.add(qs.getLiteral("name").getString()));
+			}
+			Assert.assertEquals(Arrays.asList("b", "c"), names);
+		}
+	}
+}
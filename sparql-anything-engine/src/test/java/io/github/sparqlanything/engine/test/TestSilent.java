@@ -109,4 +109,29 @@ public class TestSilent {
 		}
 		Assert.assertFalse(raisesException);
 	}
+
+	@Test
+	public void testSilentFailureNotReused() {
+		// With strategy 0, the graph of the source does not depend on the operation
+		boolean raisesException = false;
+		String q = "PREFIX fx: <http://sparql.xyz/facade-x/ns/>\n" +
+				"select * where {" +
+				"{ service silent <x-sparql-anything:> {" +
+				"fx:properties fx:location \"http://www.example.org2562456294865\";" +
+				"	fx:media-type \"application/json\"; fx:strategy 0 ." +
+				" ?s ?p ?o" +
+				"} } union {" +
+				"service <x-sparql-anything:> {" +
+				"fx:properties fx:location \"http://www.example.org2562456294865\";" +
+				"	fx:media-type \"application/json\"; fx:strategy 0 ." +
+				" ?s ?p ?o" +
+				"} }" +
+				"}";
+		try {
+			ResultSetFormatter.consume(execute(q));
+		} catch (Exception e) {
+			raisesException = true;
+		}
+		Assert.assertTrue(raisesException);
+	}
 }
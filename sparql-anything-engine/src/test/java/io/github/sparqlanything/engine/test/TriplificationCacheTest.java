@@ -0,0 +1,272 @@
+/*
+ * Copyright (c) 2023 SPARQL Anything Contributors @ http://github.com/sparql-anything
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.sparqlanything.engine.test;
+
+import com.sun.net.httpserver.HttpServer;
+import io.github.sparqlanything.engine.FacadeX;
+import io.github.sparqlanything.engine.TriplificationCache;
+import org.apache.jena.query.*;
+import org.apache.jena.sparql.engine.main.QC;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class TriplificationCacheTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Before
+	public void before() {
+		QC.setFactory(ARQ.getContext(), FacadeX.ExecutorFactory);
+		TriplificationCache.getInstance().clear();
+	}
+
+	@After
+	public void after() {
+		ARQ.getContext().remove(TriplificationCache.maxSize);
+		ARQ.getContext().remove(TriplificationCache.evictionPolicy);
+		ARQ.getContext().remove(TriplificationCache.remoteTtl);
+		TriplificationCache.getInstance().configure(ARQ.getContext());
+		TriplificationCache.getInstance().clear();
+	}
+
+	private int countCells(File file, String extra) {
+		return count(file, extra, "?r ?slot ?v FILTER(isLiteral(?v))");
+	}
+
+	private int count(File file, String extra, String pattern) {
+		String q = "PREFIX fx: <http://sparql.xyz/facade-x/ns/>\n" +
+				"PREFIX xyz: <http://sparql.xyz/facade-x/data/>\n" +
+				"SELECT (COUNT(?v) AS ?c) WHERE { SERVICE <x-sparql-anything:location=" + file.getAbsolutePath() + extra + "> { " + pattern + " } }";
+		QueryExecution qexec = QueryExecutionFactory.create(QueryFactory.create(q), DatasetFactory.createGeneral());
+		int count = qexec.execSelect().next().getLiteral("c").getInt();
+		qexec.close();
+		return count;
+	}
+
+	private File write(String name, String content) throws IOException {
+		File file = new File(folder.getRoot(), name);
+		Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+		return file;
+	}
+
+	@Test
+	public void reuseAcrossQueries() throws IOException {
+		File csv = write("a.csv", "a,b\n1,2\n3,4\n");
+		Assert.assertEquals(6, countCells(csv, ""));
+		long size = TriplificationCache.getInstance().getSize();
+		Assert.assertTrue(size > 0);
+		Assert.assertEquals(6, countCells(csv, ""));
+		Assert.assertEquals(size, TriplificationCache.getInstance().getSize());
+	}
+
+	@Test
+	public void invalidateWhenSourceChanges() throws IOException {
+		File csv = write("b.csv", "a,b\n1,2\n");
+		Assert.assertEquals(4, countCells(csv, ""));
+		write("b.csv", "a,b\n1,2\n3,4\n5,6\n");
+		Assert.assertTrue(csv.setLastModified(csv.lastModified() + 2000));
+		Assert.assertEquals(8, countCells(csv, ""));
+	}
+
+	@Test
+	public void noCache() throws IOException {
+		File csv = write("c.csv", "a,b\n1,2\n");
+		Assert.assertEquals(4, countCells(csv, ",no-cache=true"));
+		Assert.assertEquals(0, TriplificationCache.getInstance().getSize());
+	}
+
+	@Test
+	public void evictWhenBudgetExceeded() throws IOException {
+		File first = write("d.csv", "a,b\n1,2\n");
+		File second = write("e.csv", "a,b\n1,2\n");
+		countCells(first, "");
+		long size = TriplificationCache.getInstance().getSize();
+		ARQ.getContext().set(TriplificationCache.maxSize, size);
+		TriplificationCache.getInstance().configure(ARQ.getContext());
+		countCells(second, "");
+		Assert.assertEquals(size, TriplificationCache.getInstance().getSize());
+	}
+
+	@Test
+	public void disabled() throws IOException {
+		ARQ.getContext().set(TriplificationCache.maxSize, 0L);
+		TriplificationCache.getInstance().configure(ARQ.getContext());
+		File csv = write("f.csv", "a,b\n1,2\n");
+		Assert.assertEquals(4, countCells(csv, ""));
+		Assert.assertEquals(0, TriplificationCache.getInstance().getSize());
+	}
+
+	@Test
+	public void reuseMoreGeneralGraph() throws IOException {
+		File csv = write("g.csv", "a,b\n1,2\n3,4\n");
+		Assert.assertEquals(4, count(csv, ",csv.headers=true", "?r ?p ?v FILTER(isLiteral(?v))"));
+		long size = TriplificationCache.getInstance().getSize();
+		Assert.assertEquals(2, count(csv, ",csv.headers=true", "?r xyz:a ?v"));
+		Assert.assertEquals(size, TriplificationCache.getInstance().getSize());
+		// A narrower graph can't be used for a more general query
+		Assert.assertEquals(2, count(csv, ",csv.headers=true", "?r xyz:b ?v"));
+		Assert.assertEquals(size, TriplificationCache.getInstance().getSize());
+		TriplificationCache.getInstance().clear();
+		Assert.assertEquals(2, count(csv, ",csv.headers=true", "?r xyz:b ?v"));
+		size = TriplificationCache.getInstance().getSize();
+		Assert.assertEquals(4, count(csv, ",csv.headers=true", "?r ?p ?v FILTER(isLiteral(?v))"));
+		Assert.assertTrue(TriplificationCache.getInstance().getSize() > size);
+	}
+
+	@Test
+	public void reuseWholeSource() throws IOException {
+		File csv = write("h.csv", "a,b\n1,2\n3,4\n");
+		Assert.assertEquals(2, count(csv, ",csv.headers=true,strategy=0", "?r xyz:a ?v"));
+		long size = TriplificationCache.getInstance().getSize();
+		Assert.assertEquals(2, count(csv, ",csv.headers=true", "?r xyz:b ?v"));
+		Assert.assertEquals(size, TriplificationCache.getInstance().getSize());
+	}
+
+	@Test
+	public void prunedGraphNotReused() throws IOException {
+		File json = write("p.json", "{\"a\":{\"b\":1},\"c\":{\"b\":2}}");
+		// The triplification skips the content of c
+		Assert.assertEquals(1, count(json, "", "?root a fx:root ; xyz:a ?a . ?a xyz:b ?v"));
+		Assert.assertEquals(2, count(json, "", "?x xyz:b ?v"));
+	}
+
+	private String values(File file, String extra) {
+		String q = "PREFIX xyz: <http://sparql.xyz/facade-x/data/>\n" +
+				"SELECT ?v WHERE { SERVICE <x-sparql-anything:location=" + file.getAbsolutePath() + extra + "> { ?r xyz:a ?v } } ORDER BY ?v";
+		QueryExecution qexec = QueryExecutionFactory.create(QueryFactory.create(q), DatasetFactory.createGeneral());
+		StringBuilder sb = new StringBuilder();
+		qexec.execSelect().forEachRemaining(qs -> sb.append(qs.getLiteral("v").getLexicalForm()));
+		qexec.close();
+		return sb.toString();
+	}
+
+	@Test
+	public void snapshot() throws IOException {
+		File dir = folder.newFolder("snapshots");
+		File csv = write("i.csv", "a,b\n1,2\n3,4\n");
+		long lastModified = csv.lastModified();
+		String extra = ",csv.headers=true,snapshot=" + dir.getAbsolutePath();
+		Assert.assertEquals("13", values(csv, extra));
+		Assert.assertEquals(1, dir.listFiles().length);
+
+		// Same size and modification time: the snapshot is loaded instead of the source
+		TriplificationCache.getInstance().clear();
+		write("i.csv", "a,b\n5,6\n7,8\n");
+		Assert.assertTrue(csv.setLastModified(lastModified));
+		Assert.assertEquals("13", values(csv, extra));
+
+		// The snapshot of the previous version of the source is replaced
+		TriplificationCache.getInstance().clear();
+		Assert.assertTrue(csv.setLastModified(lastModified + 2000));
+		Assert.assertEquals("57", values(csv, extra));
+		Assert.assertEquals(1, dir.listFiles().length);
+	}
+
+	@Test
+	public void ondiskReuse() throws IOException {
+		File ondisk = folder.newFolder("tdb");
+		File csv = write("j.csv", "a,b\n1,2\n3,4\n");
+		long lastModified = csv.lastModified();
+		String extra = ",csv.headers=true,ondisk=" + ondisk.getAbsolutePath();
+		Assert.assertEquals("13", values(csv, extra));
+
+		// Same size and modification time: the source is not triplified again
+		write("j.csv", "a,b\n5,6\n7,8\n");
+		Assert.assertTrue(csv.setLastModified(lastModified));
+		Assert.assertEquals("13", values(csv, extra));
+
+		// The changed source is added to the on disk graph
+		Assert.assertTrue(csv.setLastModified(lastModified + 2000));
+		Assert.assertEquals("1357", values(csv, extra));
+		Assert.assertTrue(new File(ondisk, "sparql-anything-sources.properties").isFile());
+	}
+
+	private static int spilled() {
+		String[] files = new File(System.getProperty("java.io.tmpdir")).list((dir, name) -> name.startsWith("sparql-anything-spill"));
+		return files == null ? 0 : files.length;
+	}
+
+	@Test
+	public void spill() throws IOException {
+		File csv = write("k.csv", "a,b\n1,2\n3,4\n5,6\n");
+		int spilled = spilled();
+		Assert.assertEquals("135", values(csv, ",csv.headers=true,ondisk.spill=5"));
+		Assert.assertEquals("135", values(csv, ",csv.headers=true,ondisk.spill=5,strategy=0,no-cache=true"));
+		// The temporary on disk graphs are deleted at the end of the queries
+		Assert.assertEquals(spilled, spilled());
+	}
+
+	private static void count(String q) {
+		try (QueryExecution qexec = QueryExecutionFactory.create(QueryFactory.create(q), DatasetFactory.createGeneral())) {
+			Assert.assertEquals(4, qexec.execSelect().next().getLiteral("c").getInt());
+		}
+	}
+
+	@Test
+	public void remoteSources() throws IOException {
+		AtomicInteger gets = new AtomicInteger();
+		AtomicInteger heads = new AtomicInteger();
+		HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		server.createContext("/l.csv", exchange -> {
+			byte[] body = "a,b\n1,2\n".getBytes(StandardCharsets.UTF_8);
+			if (exchange.getRequestMethod().equals("HEAD")) {
+				heads.incrementAndGet();
+				exchange.sendResponseHeaders(200, -1);
+				exchange.close();
+				return;
+			}
+			gets.incrementAndGet();
+			exchange.getResponseHeaders().add("ETag", "\"v1\"");
+			exchange.sendResponseHeaders(200, body.length);
+			try (OutputStream os = exchange.getResponseBody()) {
+				os.write(body);
+			}
+		});
+		server.start();
+		try {
+			String q = "SELECT (COUNT(?v) AS ?c) WHERE { SERVICE <x-sparql-anything:location=http://127.0.0.1:" + server.getAddress().getPort() + "/l.csv> { ?r ?slot ?v FILTER(isLiteral(?v)) } }";
+			// Not shared by default
+			count(q);
+			int perTriplification = gets.get();
+			count(q);
+			Assert.assertEquals(2 * perTriplification, gets.get());
+			// Shared for a while, without requesting the source
+			ARQ.getContext().set(TriplificationCache.remoteTtl, 3600000L);
+			TriplificationCache.getInstance().configure(ARQ.getContext());
+			count(q);
+			int shared = gets.get();
+			count(q);
+			Assert.assertEquals(shared, gets.get());
+			Assert.assertEquals(0, heads.get());
+		} finally {
+			server.stop(0);
+		}
+	}
+}
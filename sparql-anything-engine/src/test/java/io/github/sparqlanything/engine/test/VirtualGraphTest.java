@@ -0,0 +1,75 @@
+/*
+ * Copyright (c) 2023 SPARQL Anything Contributors @ http://github.com/sparql-anything
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.sparqlanything.engine.test;
+
+import io.github.sparqlanything.engine.FacadeX;
+import org.apache.jena.query.*;
+import org.apache.jena.sparql.engine.main.QC;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+public class VirtualGraphTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Before
+	public void before() {
+		QC.setFactory(ARQ.getContext(), FacadeX.ExecutorFactory);
+	}
+
+	private List<String> select(File json, String query, String options) {
+		String location = json.getAbsolutePath();
+		String q = "PREFIX xyz: <http://sparql.xyz/facade-x/data/>\n" +
+				"PREFIX fx: <http://sparql.xyz/facade-x/ns/>\n" +
+				"PREFIX rdf: <http://www.w3.org/1999/02/22-rdf-syntax-ns#>\n" +
+				"SELECT * WHERE { SERVICE <x-sparql-anything:location=" + location + ",no-cache=true" + options + "> { " + query + " } } ORDER BY ?v";
+		List<String> results = new ArrayList<>();
+		try (QueryExecution qexec = QueryExecutionFactory.create(QueryFactory.create(q), DatasetFactory.createGeneral())) {
+			qexec.execSelect().forEachRemaining(qs -> results.add(qs.toString()));
+		}
+		return results;
+	}
+
+	@Test
+	public void sameResults() throws IOException {
+		File json = new File(folder.getRoot(), "a.json");
+		Files.write(json.toPath(), ("{\"name\":\"root\",\"items\":[{\"name\":\"a\",\"size\":1},{\"name\":\"b\",\"tags\":[\"x\",true,2.5]},3],\"meta\":{\"name\":\"m\",\"empty\":{}}}").getBytes(StandardCharsets.UTF_8));
+		String[] queries = {
+				"?s ?p ?v",
+				"?root a fx:root ; ?slot ?c . ?c xyz:name ?v",
+				"?c xyz:name ?v . ?parent ?slot ?c",
+				"?root a fx:root . ?root (!rdf:type)* ?c . ?c ?p ?v FILTER(isLiteral(?v))"
+		};
+		for (String query : queries) {
+			List<String> expected = select(json, query, "");
+			Assert.assertFalse(query, expected.isEmpty());
+			Assert.assertEquals(query, expected, select(json, query, ",virtual=true"));
+			Assert.assertEquals(query, select(json, query, ",blank-nodes=false"), select(json, query, ",virtual=true,blank-nodes=false"));
+		}
+	}
+}
@@ -124,9 +124,14 @@ public class HTMLTriplifier implements Triplifier {
 		for (Element element : elements) {
 			counter++;
 			String resourceId = toResourceId(element, blank_nodes, builder, dataSourceId);
+			List<Object> path = Collections.emptyList();
 			if (elements.size() > 1) {
 				// link to root container
 				builder.addContainer(dataSourceId, rootResourceId, counter, toResourceId(element, blank_nodes, builder, dataSourceId));
+				path = Collections.singletonList(counter);
+				if (!builder.isNeeded(dataSourceId, path)) {
+					continue;
+				}
 			} else {
 				// Is root container
 				rootResourceId = SPARQLAnythingConstants.ROOT_ID;
@@ -134,7 +139,7 @@ public class HTMLTriplifier implements Triplifier {
 				builder.addRoot(dataSourceId);
 			}
 			try {
-				populate(builder, dataSourceId, element, blank_nodes, resourceId);
+				populate(builder, dataSourceId, element, blank_nodes, resourceId, path);
 			} catch (URISyntaxException e) {
 				throw new IOException(e);
 			}
@@ -161,7 +166,7 @@ public class HTMLTriplifier implements Triplifier {
 		}
 	}
 
-	private void populate(FacadeXGraphBuilder builder, String dataSourceId, Element element, boolean blank_nodes, String resourceId) throws URISyntaxException {
+	private void populate(FacadeXGraphBuilder builder, String dataSourceId, Element element, boolean blank_nodes, String resourceId, List<Object> path) throws URISyntaxException {
 
 		String tagName = element.tagName(); // tagname is the type
 //		String resourceId = toResourceId(element, blank_nodes);
@@ -188,7 +193,11 @@ public class HTMLTriplifier implements Triplifier {
 			counter++;
 			if (child instanceof Element) {
 				builder.addContainer(dataSourceId, resourceId, counter, toResourceId((Element) child, blank_nodes, builder, dataSourceId));
-				populate(builder, dataSourceId, (Element) child, blank_nodes, toResourceId((Element) child, blank_nodes, builder, dataSourceId));
+				List<Object> childPath = new ArrayList<>(path);
+				childPath.add(counter);
+				if (builder.isNeeded(dataSourceId, childPath)) {
+					populate(builder, dataSourceId, (Element) child, blank_nodes, toResourceId((Element) child, blank_nodes, builder, dataSourceId), childPath);
+				}
 			} else {
 				builder.addValue(dataSourceId, resourceId, counter, child.outerHtml());
 			}
@@ -44,6 +44,11 @@ public class JSONPathSlice implements Slice<Object> {
 	}
 
 
+	@Override
+	public boolean isIndependent() {
+		return true;
+	}
+
 	public static JSONPathSlice makeSlice(Object object, int iteration, String dataSourceId){
 		JSONPathSlice r = new JSONPathSlice();
 		r.object = object;
@@ -19,9 +19,13 @@ package io.github.sparqlanything.json;
 import com.fasterxml.jackson.core.JsonFactory;
 import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import io.github.sparqlanything.model.*;
 import org.apache.commons.lang3.StringUtils;
+import org.apache.jena.atlas.io.IO;
+import org.apache.jena.atlas.iterator.IteratorCloseable;
 import org.apache.jena.ext.com.google.common.collect.Sets;
+import org.apache.jena.sparql.core.DatasetGraph;
 import org.jsfr.json.Collector;
 import org.jsfr.json.JacksonParser;
 import org.jsfr.json.JsonSurfer;
@@ -34,6 +38,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
@@ -44,7 +49,7 @@ import java.util.Set;
 import static com.fasterxml.jackson.core.JsonToken.END_ARRAY;
 import static com.fasterxml.jackson.core.JsonToken.END_OBJECT;
 
-public class JSONTriplifier implements Triplifier, Slicer {
+public class JSONTriplifier implements Triplifier, Slicer, VirtualTriplifier {
 
 	public static final String PROPERTY_JSONPATH = "json.path";
 	private static final Logger logger = LoggerFactory.getLogger(JSONTriplifier.class);
@@ -67,25 +72,42 @@ public class JSONTriplifier implements Triplifier, Slicer {
 		JsonToken token = parser.nextToken();
 		if (token == JsonToken.START_OBJECT) {
 			logger.trace("Transforming object");
-			transformObject(parser, SPARQLAnythingConstants.DATA_SOURCE_ID, SPARQLAnythingConstants.ROOT_ID, builder);
+			transformObject(parser, SPARQLAnythingConstants.DATA_SOURCE_ID, SPARQLAnythingConstants.ROOT_ID, Collections.emptyList(), builder);
 		} else if (token == JsonToken.START_ARRAY) {
 			logger.trace("Transforming array");
-			transformArray(parser, SPARQLAnythingConstants.DATA_SOURCE_ID, SPARQLAnythingConstants.ROOT_ID, builder);
+			transformArray(parser, SPARQLAnythingConstants.DATA_SOURCE_ID, SPARQLAnythingConstants.ROOT_ID, Collections.emptyList(), builder);
 		}
 
 	}
 
-	private void transformArrayItem(int i, JsonToken token, JsonParser parser, String dataSourceId, String containerId, FacadeXGraphBuilder builder) throws IOException {
+	private static List<Object> childPath(List<Object> path, Object key) {
+		List<Object> childPath = new ArrayList<>(path.size() + 1);
+		childPath.addAll(path);
+		childPath.add(key);
+		return childPath;
+	}
+
+	private void transformArrayItem(int i, JsonToken token, JsonParser parser, String dataSourceId, String containerId, List<Object> path, FacadeXGraphBuilder builder) throws IOException {
 		switch (token) {
 			case START_ARRAY:
 				String childContainerIdArray = StringUtils.join(containerId, "/_", String.valueOf(i + 1));
 				builder.addContainer(dataSourceId, containerId, i + 1, childContainerIdArray);
-				transformArray(parser, dataSourceId, childContainerIdArray, builder);
+				List<Object> childPathArray = childPath(path, i + 1);
+				if (builder.isNeeded(dataSourceId, childPathArray)) {
+					transformArray(parser, dataSourceId, childContainerIdArray, childPathArray, builder);
+				} else {
+					parser.skipChildren();
+				}
 				break;
 			case START_OBJECT:
 				String childContainerId = StringUtils.join(containerId, "/_", String.valueOf(i + 1));
 				builder.addContainer(dataSourceId, containerId, i + 1, childContainerId);
-				transformObject(parser, dataSourceId, childContainerId, builder);
+				List<Object> childPath = childPath(path, i + 1);
+				if (builder.isNeeded(dataSourceId, childPath)) {
+					transformObject(parser, dataSourceId, childContainerId, childPath, builder);
+				} else {
+					parser.skipChildren();
+				}
 				break;
 			case VALUE_FALSE:
 			case VALUE_TRUE:
@@ -113,15 +135,21 @@ public class JSONTriplifier implements Triplifier, Slicer {
 		}
 	}
 
-	private void transformArrayItem(int i, Object o, String dataSourceId, String containerId, FacadeXGraphBuilder builder) {
+	private void transformArrayItem(int i, Object o, String dataSourceId, String containerId, List<Object> path, FacadeXGraphBuilder builder) {
 		if (o instanceof List) {
 			String childContainerIdarr = StringUtils.join(containerId, "/_", String.valueOf(i + 1));
 			builder.addContainer(dataSourceId, containerId, i + 1, childContainerIdarr);
-			transformArray((List) o, dataSourceId, childContainerIdarr, builder);
+			List<Object> childPath = childPath(path, i + 1);
+			if (builder.isNeeded(dataSourceId, childPath)) {
+				transformArray((List) o, dataSourceId, childContainerIdarr, childPath, builder);
+			}
 		} else if (o instanceof Map) {
 			String childContainerId = StringUtils.join(containerId, "/_", String.valueOf(i + 1));
 			builder.addContainer(dataSourceId, containerId, i + 1, childContainerId);
-			transformMap((Map) o, dataSourceId, childContainerId, builder);
+			List<Object> childPath = childPath(path, i + 1);
+			if (builder.isNeeded(dataSourceId, childPath)) {
+				transformMap((Map) o, dataSourceId, childContainerId, childPath, builder);
+			}
 		} else if (o instanceof Boolean) {
 			builder.addValue(dataSourceId, containerId, i + 1, o);
 		} else if (o instanceof Double) {
@@ -143,25 +171,25 @@ public class JSONTriplifier implements Triplifier, Slicer {
 		}
 	}
 
-	private void transformArray(List<Object> o, String dataSourceId, String containerId, FacadeXGraphBuilder builder) {
+	private void transformArray(List<Object> o, String dataSourceId, String containerId, List<Object> path, FacadeXGraphBuilder builder) {
 		int i = 0;
 		for (Object value : o) {
-			transformArrayItem(i, value, dataSourceId, containerId, builder);
+			transformArrayItem(i, value, dataSourceId, containerId, path, builder);
 			i++;
 		}
 	}
 
-	private void transformArray(JsonParser parser, String dataSourceId, String containerId, FacadeXGraphBuilder builder) throws IOException {
+	private void transformArray(JsonParser parser, String dataSourceId, String containerId, List<Object> path, FacadeXGraphBuilder builder) throws IOException {
 		int i = 0;
 		JsonToken token;
 
 		while ((token = parser.nextToken()) != END_ARRAY) {
-			transformArrayItem(i, token, parser, dataSourceId, containerId, builder);
+			transformArrayItem(i, token, parser, dataSourceId, containerId, path, builder);
 			i++;
 		}
 	}
 
-	private void transformObject(JsonParser parser, String dataSourceId, String containerId, FacadeXGraphBuilder builder) throws IOException {
+	private void transformObject(JsonParser parser, String dataSourceId, String containerId, List<Object> path, FacadeXGraphBuilder builder) throws IOException {
 
 		JsonToken token;
 		Integer coercedInt;
@@ -175,12 +203,22 @@ public class JSONTriplifier implements Triplifier, Slicer {
 					case START_ARRAY:
 						String childContainerIdArr = StringUtils.join(containerId, "/", Triplifier.toSafeURIString(k));
 						builder.addContainer(dataSourceId, containerId, Triplifier.toSafeURIString(k), childContainerIdArr);
-						transformArray(parser, dataSourceId, childContainerIdArr, builder);
+						List<Object> childPathArr = childPath(path, Triplifier.toSafeURIString(k));
+						if (builder.isNeeded(dataSourceId, childPathArr)) {
+							transformArray(parser, dataSourceId, childContainerIdArr, childPathArr, builder);
+						} else {
+							parser.skipChildren();
+						}
 						break;
 					case START_OBJECT:
 						String childContainerId = StringUtils.join(containerId, "/", Triplifier.toSafeURIString(k));
 						builder.addContainer(dataSourceId, containerId, Triplifier.toSafeURIString(k), childContainerId);
-						transformObject(parser, dataSourceId, childContainerId, builder);
+						List<Object> childPath = childPath(path, Triplifier.toSafeURIString(k));
+						if (builder.isNeeded(dataSourceId, childPath)) {
+							transformObject(parser, dataSourceId, childContainerId, childPath, builder);
+						} else {
+							parser.skipChildren();
+						}
 						break;
 					case VALUE_NUMBER_FLOAT:
 						logger.trace("{} float", k);
@@ -224,7 +262,7 @@ public class JSONTriplifier implements Triplifier, Slicer {
 
 	}
 
-	private void transformMap(Map o, String dataSourceId, String containerId, FacadeXGraphBuilder builder) {
+	private void transformMap(Map o, String dataSourceId, String containerId, List<Object> path, FacadeXGraphBuilder builder) {
 		Integer coercedInt;
 		String coercedStr;
 		Iterator<Map.Entry> it = o.entrySet().iterator();
@@ -235,11 +273,17 @@ public class JSONTriplifier implements Triplifier, Slicer {
 			if (val instanceof List) {
 				String childContainerIdArr = StringUtils.join(containerId, "/", Triplifier.toSafeURIString(k));
 				builder.addContainer(dataSourceId, containerId, Triplifier.toSafeURIString(k), childContainerIdArr);
-				transformArray((List) val, dataSourceId, childContainerIdArr, builder);
+				List<Object> childPathArr = childPath(path, Triplifier.toSafeURIString(k));
+				if (builder.isNeeded(dataSourceId, childPathArr)) {
+					transformArray((List) val, dataSourceId, childContainerIdArr, childPathArr, builder);
+				}
 			} else if (val instanceof Map) {
 				String childContainerId = StringUtils.join(containerId, "/", Triplifier.toSafeURIString(k));
 				builder.addContainer(dataSourceId, containerId, Triplifier.toSafeURIString(k), childContainerId);
-				transformMap((Map) val, dataSourceId, childContainerId, builder);
+				List<Object> childPath = childPath(path, Triplifier.toSafeURIString(k));
+				if (builder.isNeeded(dataSourceId, childPath)) {
+					transformMap((Map) val, dataSourceId, childContainerId, childPath, builder);
+				}
 			} else if (val instanceof Double) {
 				builder.addValue(dataSourceId, containerId, Triplifier.toSafeURIString(k), val);
 			} else if (val instanceof Long) {
@@ -275,6 +319,16 @@ public class JSONTriplifier implements Triplifier, Slicer {
 		}
 	}
 
+	@Override
+	public DatasetGraph virtualDatasetGraph(Properties properties) throws IOException, TriplifierHTTPException {
+		if (!Triplifier.getPropertyValues(properties, PROPERTY_JSONPATH).isEmpty() || PropertyUtils.getBooleanProperty(properties, IRIArgument.ANNOTATE_TRIPLES_WITH_SLOT_KEYS)) {
+			return null;
+		}
+		try (InputStream us = Triplifier.getInputStream(properties)) {
+			return new JSONVirtualGraph(properties, new ObjectMapper().readTree(us)).asDatasetGraph();
+		}
+	}
+
 	@Override
 	public Set<String> getMimeTypes() {
 		return Sets.newHashSet("application/json");
@@ -304,7 +358,7 @@ public class JSONTriplifier implements Triplifier, Slicer {
 			int c = 0;
 			while (matchesIterator.hasNext()) {
 				for (Object o : matchesIterator.next().get()) {
-					transformArrayItem(c, o, "", SPARQLAnythingConstants.ROOT_ID, builder);
+					transformArrayItem(c, o, "", SPARQLAnythingConstants.ROOT_ID, Collections.emptyList(), builder);
 					c++;
 				}
 			}
@@ -395,7 +449,7 @@ public class JSONTriplifier implements Triplifier, Slicer {
 	}
 
 	private Iterable<Slice> sliceFromArray(Properties properties) throws IOException, TriplifierHTTPException {
-		// XXX How do we close the input stream?
+		// The input stream is closed with the parser, when the iterator of the slices is closed
 		final InputStream us = Triplifier.getInputStream(properties);
 		JsonFactory factory = JsonFactory.builder().build();
 		JsonParser parser = factory.createParser(us);
@@ -414,9 +468,14 @@ public class JSONTriplifier implements Triplifier, Slicer {
 			@Override
 			public Iterator<Slice> iterator() {
 				log.debug("Iterating slices");
-				return new Iterator<Slice>() {
+				return new IteratorCloseable<Slice>() {
 					int sln = 0;
 
+					@Override
+					public void close() {
+						IO.closeSilent(parser);
+					}
+
 					@Override
 					public boolean hasNext() {
 						if (next != null) {
@@ -458,11 +517,11 @@ public class JSONTriplifier implements Triplifier, Slicer {
 			if (slice instanceof JSONSlice) {
 				JSONSlice jslice = (JSONSlice) slice;
 				// Method is 0-indexed
-				transformArrayItem(jslice.iteration() - 1, jslice.get(), jslice.getParser(), jslice.getDatasourceId(), SPARQLAnythingConstants.ROOT_ID, builder);
+				transformArrayItem(jslice.iteration() - 1, jslice.get(), jslice.getParser(), jslice.getDatasourceId(), SPARQLAnythingConstants.ROOT_ID, Collections.emptyList(), builder);
 			} else if (slice instanceof JSONPathSlice) {
 				JSONPathSlice jslice = (JSONPathSlice) slice;
 				// Method is 0-indexed
-				transformArrayItem(jslice.iteration() - 1, jslice.get(), jslice.getDatasourceId(), SPARQLAnythingConstants.ROOT_ID, builder);
+				transformArrayItem(jslice.iteration() - 1, jslice.get(), jslice.getDatasourceId(), SPARQLAnythingConstants.ROOT_ID, Collections.emptyList(), builder);
 			}
 		} catch (IOException e) {
 			log.error("An error occurred while transforming slice {}: {}", slice.iteration(), e);
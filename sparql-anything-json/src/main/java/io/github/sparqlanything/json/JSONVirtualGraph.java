@@ -0,0 +1,120 @@
+/*
+ * Copyright (c) 2023 SPARQL Anything Contributors @ http://github.com/sparql-anything
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.sparqlanything.json;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import io.github.sparqlanything.model.SPARQLAnythingConstants;
+import io.github.sparqlanything.model.Triplifier;
+import io.github.sparqlanything.model.VirtualFacadeXGraph;
+import org.apache.jena.atlas.iterator.Iter;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.Triple;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Properties;
+import java.util.stream.IntStream;
+
+/**
+ * The Facade-X graph of a JSON document, generated on demand from its Jackson tree with the same triples as
+ * {@link JSONTriplifier}.
+ */
+public class JSONVirtualGraph extends VirtualFacadeXGraph<JsonNode> {
+
+	private final JsonNode root;
+
+	public JSONVirtualGraph(Properties properties, JsonNode root) {
+		super(properties, SPARQLAnythingConstants.DATA_SOURCE_ID);
+		this.root = root;
+	}
+
+	@Override
+	protected JsonNode getRoot() {
+		return root;
+	}
+
+	@Override
+	protected JsonNode getChild(JsonNode container, String key) {
+		JsonNode child = null;
+		if (container.isArray()) {
+			if (key.startsWith("_")) {
+				try {
+					child = container.get(Integer.parseInt(key.substring(1)) - 1);
+				} catch (NumberFormatException e) {
+					return null;
+				}
+			}
+		} else if (container.isObject()) {
+			Iterator<Map.Entry<String, JsonNode>> fields = container.fields();
+			while (fields.hasNext() && child == null) {
+				Map.Entry<String, JsonNode> field = fields.next();
+				if (Triplifier.toSafeURIString(field.getKey()).equals(key)) {
+					child = field.getValue();
+				}
+			}
+		}
+		return child != null && child.isContainerNode() ? child : null;
+	}
+
+	@Override
+	protected Iterator<Map.Entry<String, JsonNode>> getChildren(JsonNode container) {
+		if (container.isArray()) {
+			return IntStream.range(0, container.size()).filter(i -> container.get(i).isContainerNode()).mapToObj(i -> Map.entry("_" + (i + 1), container.get(i))).iterator();
+		}
+		return Iter.map(Iter.filter(container.fields(), field -> field.getValue().isContainerNode()), field -> Map.entry(Triplifier.toSafeURIString(field.getKey()), field.getValue()));
+	}
+
+	@Override
+	protected Iterator<Triple> getTriples(String containerId, JsonNode container) {
+		Node subject = nodes.container2node(containerId, dataSourceId);
+		if (container.isArray()) {
+			return IntStream.range(0, container.size()).mapToObj(i -> {
+				JsonNode item = container.get(i);
+				if (item.isContainerNode()) {
+					return Triple.create(subject, nodes.slot2predicate(i + 1), nodes.container2node(containerId + "/_" + (i + 1), dataSourceId));
+				}
+				Object value = toValue(item);
+				return value == null ? null : Triple.create(subject, nodes.slot2predicate(i + 1), nodes.value2node(value));
+			}).filter(t -> t != null).iterator();
+		}
+		return Iter.removeNulls(Iter.map(container.fields(), field -> {
+			String key = field.getKey();
+			JsonNode value = field.getValue();
+			if (value.isContainerNode()) {
+				String safeKey = Triplifier.toSafeURIString(key);
+				return Triple.create(subject, nodes.key2predicate(safeKey), nodes.container2node(containerId + "/" + safeKey, dataSourceId));
+			}
+			Object v = toValue(value);
+			return v == null ? null : Triple.create(subject, nodes.key2predicate(key), nodes.value2node(v));
+		}));
+	}
+
+	private static Object toValue(JsonNode value) {
+		if (value.isBoolean()) {
+			return value.booleanValue();
+		} else if (value.isFloatingPointNumber()) {
+			return value.doubleValue();
+		} else if (value.isIntegralNumber()) {
+			// As the triplifier, integers that do not fit an int are kept as strings
+			return value.canConvertToInt() ? (Object) value.intValue() : value.asText();
+		} else if (value.isTextual()) {
+			return value.textValue();
+		}
+		// null
+		return null;
+	}
+}
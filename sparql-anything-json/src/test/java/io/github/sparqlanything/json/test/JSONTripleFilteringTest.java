@@ -21,9 +21,13 @@ import io.github.sparqlanything.model.FacadeXGraphBuilder;
 import io.github.sparqlanything.model.IRIArgument;
 import io.github.sparqlanything.model.TripleFilteringFacadeXGraphBuilder;
 import io.github.sparqlanything.model.TriplifierHTTPException;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.NodeFactory;
 import org.apache.jena.graph.Node_Variable;
 import org.apache.jena.graph.Triple;
+import org.apache.jena.query.QueryFactory;
 import org.apache.jena.rdf.model.ResourceFactory;
+import org.apache.jena.sparql.algebra.Algebra;
 import org.apache.jena.sparql.algebra.Op;
 import org.apache.jena.sparql.algebra.op.OpBGP;
 import org.apache.jena.sparql.core.DatasetGraph;
@@ -34,9 +38,13 @@ import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Properties;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
 public class JSONTripleFilteringTest {
@@ -97,6 +105,30 @@ public class JSONTripleFilteringTest {
 		assertTrue(g1.getDefaultGraph().size() == 4);
 	}
 
+	@Test
+	public void skipUnneededSubtrees() throws IOException, TriplifierHTTPException {
+		URL url = getClass().getClassLoader().getResource("./test.json");
+		Properties properties = new Properties();
+		properties.setProperty(IRIArgument.LOCATION.toString(), url.toString());
+		Op op = Algebra.compile(QueryFactory.create("PREFIX xyz: <http://sparql.xyz/facade-x/data/> PREFIX fx: <http://sparql.xyz/facade-x/ns/> SELECT * WHERE { ?root a fx:root ; xyz:store ?s . ?s xyz:bicycle ?b . ?b xyz:color ?c }"));
+		List<List<Object>> skipped = new ArrayList<>();
+		FacadeXGraphBuilder builder = new TripleFilteringFacadeXGraphBuilder(url.toString(), op, properties) {
+			@Override
+			public boolean isNeeded(String dataSourceId, List<Object> path) {
+				boolean needed = super.isNeeded(dataSourceId, path);
+				if (!needed) {
+					skipped.add(path);
+				}
+				return needed;
+			}
+		};
+		new JSONTriplifier().triplify(properties, builder);
+		// The books are not visited
+		assertTrue(skipped.contains(Arrays.asList("store", "book")));
+		assertEquals(4, builder.getDatasetGraph().getDefaultGraph().size());
+		assertTrue(builder.getDatasetGraph().getDefaultGraph().contains(Node.ANY, NodeFactory.createURI("http://sparql.xyz/facade-x/data/color"), NodeFactory.createLiteral("red")));
+	}
+
 	@Test
 	public void testEquals() {
 
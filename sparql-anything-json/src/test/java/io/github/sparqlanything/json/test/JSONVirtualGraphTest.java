@@ -0,0 +1,83 @@
+/*
+ * Copyright (c) 2023 SPARQL Anything Contributors @ http://github.com/sparql-anything
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.sparqlanything.json.test;
+
+import io.github.sparqlanything.json.JSONTriplifier;
+import io.github.sparqlanything.model.BaseFacadeXGraphBuilder;
+import io.github.sparqlanything.model.IRIArgument;
+import io.github.sparqlanything.model.TriplifierHTTPException;
+import org.apache.jena.graph.Graph;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.sparql.core.DatasetGraph;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+
+public class JSONVirtualGraphTest {
+
+	private static final String[] FILES = {"test.json", "friends.json", "testarray.json", "testnumbers.json", "emptyobject.json", "emptyarray.json", "emptyfile", "whitespaceKeys.json", "ValueTypes_1.json", "Object.json"};
+
+	private static Properties properties(String file, boolean blankNodes) {
+		Properties properties = new Properties();
+		properties.setProperty(IRIArgument.LOCATION.toString(), JSONVirtualGraphTest.class.getClassLoader().getResource(file).toString());
+		properties.setProperty(IRIArgument.BLANK_NODES.toString(), Boolean.toString(blankNodes));
+		return properties;
+	}
+
+	private static Set<Triple> find(Graph g, Node s, Node p, Node o) {
+		return new HashSet<>(g.find(s, p, o).toList());
+	}
+
+	private static void assertSameGraph(String file, Graph expected, Graph actual) {
+		Assert.assertEquals(file, find(expected, Node.ANY, Node.ANY, Node.ANY), find(actual, Node.ANY, Node.ANY, Node.ANY));
+		List<Triple> triples = expected.find().toList();
+		for (Triple t : triples) {
+			Assert.assertEquals(file, find(expected, t.getSubject(), Node.ANY, Node.ANY), find(actual, t.getSubject(), Node.ANY, Node.ANY));
+			Assert.assertEquals(file, find(expected, Node.ANY, t.getPredicate(), t.getObject()), find(actual, Node.ANY, t.getPredicate(), t.getObject()));
+			Assert.assertTrue(file, actual.contains(t));
+		}
+	}
+
+	@Test
+	public void sameAsTriplification() throws IOException, TriplifierHTTPException {
+		JSONTriplifier triplifier = new JSONTriplifier();
+		for (boolean blankNodes : new boolean[]{true, false}) {
+			for (String file : FILES) {
+				BaseFacadeXGraphBuilder builder = new BaseFacadeXGraphBuilder(properties(file, blankNodes));
+				triplifier.triplify(properties(file, blankNodes), builder);
+				DatasetGraph expected = builder.getDatasetGraph();
+				DatasetGraph actual = triplifier.virtualDatasetGraph(properties(file, blankNodes));
+				assertSameGraph(file, expected.getDefaultGraph(), actual.getDefaultGraph());
+				Node graphName = expected.listGraphNodes().next();
+				assertSameGraph(file, expected.getGraph(graphName), actual.getGraph(graphName));
+			}
+		}
+	}
+
+	@Test
+	public void unsupportedOptions() throws IOException, TriplifierHTTPException {
+		Properties properties = properties("test.json", true);
+		properties.setProperty(JSONTriplifier.PROPERTY_JSONPATH, "$.store");
+		Assert.assertNull(new JSONTriplifier().virtualDatasetGraph(properties));
+	}
+}
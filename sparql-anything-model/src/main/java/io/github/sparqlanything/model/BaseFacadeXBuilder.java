@@ -23,9 +23,20 @@ import org.apache.jena.vocabulary.RDF;
 import org.apache.jena.vocabulary.RDFS;
 
 import java.net.URI;
+import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
 
 public abstract class BaseFacadeXBuilder implements FacadeXNodeBuilder, FacadeXQuadHandler, FacadeXComponentHandler {
+	private static final Node FACADE_X_ROOT = NodeFactory.createURI(Triplifier.FACADE_X_TYPE_ROOT);
+	private static final Node FACADE_X_SLOT_KEY = NodeFactory.createURI(Triplifier.FACADE_X_SLOT_KEY);
+	// rdf:_1 ... rdf:_1023, shared by all the builders
+	private static final Node[] SLOTS = new Node[1024];
+	// Beyond this size, keys (e.g. identifiers used as JSON keys) are unlikely to repeat and are not interned
+	private static final int MAX_INTERNED_KEYS = 10000;
+	// The last containers used, e.g. a CSV row while its cells are added
+	private static final int INTERNED_CONTAINERS = 64;
+
 	protected final Properties properties;
 	protected final boolean p_blank_nodes;
 	protected final String p_namespace;
@@ -34,6 +45,9 @@ public abstract class BaseFacadeXBuilder implements FacadeXNodeBuilder, FacadeXQ
 	protected final String p_null_string;
 	protected final boolean p_use_rdfs_member;
 	protected final boolean p_reify_slot_statements;
+	private final Map<String, Node> predicates = new ConcurrentHashMap<>();
+	private final Map<String, Node> dataSources = new ConcurrentHashMap<>();
+	private final InternedContainer[] containers = new InternedContainer[INTERNED_CONTAINERS];
 
 	public BaseFacadeXBuilder(Properties properties) {
 		this.properties = properties;
@@ -79,20 +93,60 @@ public abstract class BaseFacadeXBuilder implements FacadeXNodeBuilder, FacadeXQ
 	}
 
 	public boolean addRoot(String dataSourceId) {
-		return add(dataSourceId2node(dataSourceId), container2node("", dataSourceId), RDF.type.asNode(), NodeFactory.createURI(Triplifier.FACADE_X_TYPE_ROOT));
+		return add(dataSourceId2node(dataSourceId), container2node("", dataSourceId), RDF.type.asNode(), FACADE_X_ROOT);
 	}
 
 	private boolean addSlotStatement(String dataSourceId, String containerId, Integer slotKey, Object object, boolean isObjectContainer) {
 		Node g = dataSourceId2node(dataSourceId);
 		Node s = container2node(containerId, dataSourceId);
-		Node p = p_use_rdfs_member ? RDFS.member.asNode() : RDF.li(slotKey).asNode();
+		Node p = slot2predicate(slotKey);
 		Node o = isObjectContainer ? container2node(object.toString(), dataSourceId) : value2node(object);
 		if (p_reify_slot_statements) {
-			add(g, NodeFactory.createTripleNode(s, p, o), NodeFactory.createURI(Triplifier.FACADE_X_SLOT_KEY), NodeFactory.createLiteral(slotKey.toString(), XSDDatatype.XSDinteger));
+			add(g, NodeFactory.createTripleNode(s, p, o), FACADE_X_SLOT_KEY, NodeFactory.createLiteral(slotKey.toString(), XSDDatatype.XSDinteger));
 		}
 		return add(g, s, p, o);
 	}
 
+	public Node slot2predicate(Integer slotKey) {
+		if (p_use_rdfs_member) {
+			return RDFS.member.asNode();
+		}
+		if (slotKey <= 0 || slotKey >= SLOTS.length) {
+			return NodeFactory.createURI(RDF.uri + "_" + slotKey);
+		}
+		Node slot = SLOTS[slotKey];
+		if (slot == null) {
+			slot = NodeFactory.createURI(RDF.uri + "_" + slotKey);
+			SLOTS[slotKey] = slot;
+		}
+		return slot;
+	}
+
+	@Override
+	public Node key2predicate(String key) {
+		// Escaping the key is much more expensive than the lookup
+		Node predicate = predicates.get(key);
+		if (predicate == null) {
+			predicate = FacadeXNodeBuilder.super.key2predicate(key);
+			if (predicates.size() < MAX_INTERNED_KEYS) {
+				predicates.put(key, predicate);
+			}
+		}
+		return predicate;
+	}
+
+	@Override
+	public Node dataSourceId2node(String dataSourceId) {
+		Node node = dataSources.get(dataSourceId);
+		if (node == null) {
+			node = FacadeXNodeBuilder.super.dataSourceId2node(dataSourceId);
+			if (dataSources.size() < MAX_INTERNED_KEYS) {
+				dataSources.put(dataSourceId, node);
+			}
+		}
+		return node;
+	}
+
 	public Node value2node(Object value) {
 		// trims_strings == true and if object is string, trim it
 		if (p_trim_strings && value instanceof String) {
@@ -102,11 +156,19 @@ public abstract class BaseFacadeXBuilder implements FacadeXNodeBuilder, FacadeXQ
 	}
 
 	public Node container2node(String containerId, String dataSourceId) {
+		int i = (containerId.hashCode() * 31 + dataSourceId.hashCode()) & (INTERNED_CONTAINERS - 1);
+		InternedContainer container = containers[i];
+		if (container != null && container.containerId.equals(containerId) && container.dataSourceId.equals(dataSourceId)) {
+			return container.node;
+		}
+		Node node;
 		if (p_blank_nodes) {
-			return container2BlankNode(containerId);
+			node = container2BlankNode(containerId);
 		} else {
-			return container2URI(containerId, dataSourceId);
+			node = container2URI(containerId, dataSourceId);
 		}
+		containers[i] = new InternedContainer(containerId, dataSourceId, node);
+		return node;
 	}
 
 	public String getNamespace() {
@@ -117,4 +179,15 @@ public abstract class BaseFacadeXBuilder implements FacadeXNodeBuilder, FacadeXQ
 		return p_root.concat(dataSourceId);
 	}
 
+	private static final class InternedContainer {
+		private final String containerId;
+		private final String dataSourceId;
+		private final Node node;
+
+		private InternedContainer(String containerId, String dataSourceId, Node node) {
+			this.containerId = containerId;
+			this.dataSourceId = dataSourceId;
+			this.node = node;
+		}
+	}
 }
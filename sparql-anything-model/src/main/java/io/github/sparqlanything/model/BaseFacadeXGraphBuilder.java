@@ -17,35 +17,189 @@
 package io.github.sparqlanything.model;
 
 import org.apache.commons.io.FileUtils;
+import org.apache.jena.graph.Graph;
+import org.apache.jena.graph.GraphUtil;
 import org.apache.jena.graph.Node;
 import org.apache.jena.graph.NodeFactory;
 import org.apache.jena.graph.Triple;
 import org.apache.jena.query.TxnType;
+import org.apache.jena.riot.system.StreamRDF;
 import org.apache.jena.rdf.model.Model;
 import org.apache.jena.rdf.model.ModelFactory;
 import org.apache.jena.sparql.core.DatasetGraph;
 import org.apache.jena.sparql.core.DatasetGraphFactory;
+import org.apache.jena.sparql.core.Quad;
+import org.apache.jena.system.progress.MonitorOutput;
+import org.apache.jena.system.progress.MonitorOutputs;
 import org.apache.jena.tdb2.DatabaseMgr;
 import org.apache.jena.tdb2.TDB2Factory;
+import org.apache.jena.tdb2.loader.DataLoader;
+import org.apache.jena.tdb2.loader.LoaderFactory;
+import org.apache.jena.tdb2.sys.TDBInternal;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Properties;
 
 public class BaseFacadeXGraphBuilder extends BaseFacadeXBuilder implements FacadeXGraphBuilder {
 
 	protected static final Logger log = LoggerFactory.getLogger(BaseFacadeXGraphBuilder.class);
+	// How often the heap is checked when spilling depends on its usage
+	private static final int SPILL_HEAP_CHECK_INTERVAL = 10000;
+	// The temporary on disk graphs, deleted when they are released by all their users, or else when the JVM exits
+	private static final Map<DatasetGraph, Spilled> spilled = new HashMap<>();
+	private static boolean deleteOnExit = false;
+	private static final String SPILL_PREFIX = "sparql-anything-spill";
 
 	protected DatasetGraph datasetGraph;
+	private String graphSuffix = null;
+	// The last graph renamed with the suffix, and its new name
+	private Node suffixedGraph = null;
+	private Node suffixedGraphName = null;
+	// Loads the triples of an on disk graph in bulk, until the graph is returned
+	private DataLoader loader = null;
+	private StreamRDF loaderStream = null;
+	// Moves the in memory graph to a temporary on disk graph beyond a number of triples or a ratio of the heap used
+	private long spillTriples = -1;
+	private double spillHeapRatio = -1;
+	private long inMemoryTriples = 0;
+	// The graph the last quad was added to
+	private Node lastGraphName = null;
+	private Graph lastGraph = null;
+	// With the option pipeline, quads are added to the DatasetGraph by an indexing thread while the source is parsed
+	private static final int PIPELINE_CAPACITY = 8192;
+	private static final int PIPELINE_BATCH_SIZE = 512;
+	private QuadRingBuffer pipeline = null;
+	private Thread indexer = null;
 
 	public BaseFacadeXGraphBuilder(Properties properties) {
 		super(properties);
 		initialiseDatasetGraph(properties);
+		String spill = PropertyUtils.getStringProperty(properties, IRIArgument.ONDISK_SPILL);
+		if (spill != null && !DatabaseMgr.isTDB2(datasetGraph)) {
+			if (spill.endsWith("%")) {
+				spillHeapRatio = Double.parseDouble(spill.substring(0, spill.length() - 1)) / 100;
+			} else {
+				spillTriples = Long.parseLong(spill);
+			}
+		}
+		if (PropertyUtils.getBooleanProperty(properties, IRIArgument.PIPELINE)) {
+			pipeline = new QuadRingBuffer(PIPELINE_CAPACITY, Thread.currentThread());
+			indexer = new Thread(this::index, "facade-x-indexer");
+			indexer.setDaemon(true);
+			indexer.start();
+		} else {
+			begin();
+		}
+	}
+
+	private void begin() {
+		if (loader != null) {
+			loader.startBulk();
+			loaderStream = loader.stream();
+		} else {
+			datasetGraph.begin(TxnType.WRITE);
+		}
+	}
+
+	/**
+	 * Run by the indexing thread: adds the quads of the pipeline in batches, within a transaction (or a bulk load) of
+	 * its own, since transactions belong to the thread that started them. The transaction is committed once the
+	 * pipeline is closed, and aborted if the builder is discarded.
+	 */
+	private void index() {
+		try {
+			begin();
+			Quad[] batch = new Quad[PIPELINE_BATCH_SIZE];
+			int n;
+			while ((n = pipeline.take(batch)) >= 0) {
+				for (int i = 0; i < n; i++) {
+					store(batch[i].getGraph(), batch[i].getSubject(), batch[i].getPredicate(), batch[i].getObject());
+					batch[i] = null;
+				}
+			}
+			if (!pipeline.isClosed()) {
+				log.debug("Discarding the quads of the pipeline");
+				end(false);
+			} else {
+				end(true);
+			}
+		} catch (Throwable e) {
+			pipeline.fail(e);
+			try {
+				end(false);
+			} catch (RuntimeException ignored) {
+				// Failed already
+			}
+		}
+	}
+
+	private void end(boolean commit) {
+		if (loader != null) {
+			if (commit) {
+				loader.finishBulk();
+			} else {
+				loader.finishException(new IllegalStateException("Discarded"));
+			}
+			loader = null;
+			loaderStream = null;
+		} else if (datasetGraph.isInTransaction()) {
+			if (commit) {
+				datasetGraph.commit();
+			} else {
+				datasetGraph.abort();
+			}
+			datasetGraph.end();
+		}
+	}
+
+	/**
+	 * Waits for the indexing thread to add the quads of the pipeline, and returns to a write transaction of the calling
+	 * thread, as without the pipeline.
+	 */
+	private void closePipeline() {
+		pipeline.close();
+		try {
+			indexer.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException(e);
+		}
+		pipeline.checkFailure();
+		pipeline = null;
+		indexer = null;
 		datasetGraph.begin(TxnType.WRITE);
 	}
 
+	/**
+	 * Stops adding quads, dropping the ones added so far, when the graph is not going to be requested. Needed with the
+	 * option pipeline, to stop the indexing thread, and with the option ondisk.spill, to delete the temporary graph.
+	 */
+	public void discard() {
+		if (pipeline != null) {
+			pipeline.fail(new IllegalStateException("Discarded"));
+			try {
+				indexer.join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			pipeline = null;
+			indexer = null;
+		} else if (isSpilled(datasetGraph)) {
+			try {
+				end(false);
+			} catch (RuntimeException e) {
+				log.debug("Cannot abort the temporary graph: {}", e.getMessage());
+			}
+		}
+		release(datasetGraph);
+	}
+
 
 	private void initialiseDatasetGraph(Properties properties) {
 		String ondiskPath = PropertyUtils.getStringProperty(properties, IRIArgument.ONDISK);
@@ -68,6 +222,10 @@ public class BaseFacadeXGraphBuilder extends BaseFacadeXBuilder implements Facad
 				// end the read txn from the previous query
 				datasetGraph.end();
 			}
+			loader = createLoader(PropertyUtils.getStringProperty(properties, IRIArgument.ONDISK_LOADER), datasetGraph);
+		} else if (PropertyUtils.getBooleanProperty(properties, IRIArgument.COMPACT)) {
+			log.debug("Using compact in memory DatasetGraph");
+			datasetGraph = CompactGraph.createDatasetGraph();
 		} else {
 			log.debug("Using in memory DatasetGraph");
 			// I don't think we ever reuse the same in memory DatasetGraph
@@ -76,20 +234,193 @@ public class BaseFacadeXGraphBuilder extends BaseFacadeXBuilder implements Facad
 		}
 	}
 
+	private static DataLoader createLoader(String name, DatasetGraph dg) {
+		MonitorOutput output = log.isDebugEnabled() ? MonitorOutputs.outputToLog(log) : MonitorOutputs.nullOutput();
+		switch (name) {
+			case "none":
+				return null;
+			case "basic":
+				return LoaderFactory.basicLoader(dg, output);
+			case "sequential":
+				return LoaderFactory.sequentialLoader(dg, output);
+			case "phased":
+				return LoaderFactory.phasedLoader(dg, output);
+			case "parallel":
+				return LoaderFactory.parallelLoader(dg, output);
+			default:
+				throw new IllegalArgumentException("Unknown value for " + IRIArgument.ONDISK_LOADER + ": " + name);
+		}
+	}
+
 	@Override
 	public boolean add(Node graph, Node subject, Node predicate, Node object) {
 
 		if (p_null_string != null && object.isLiteral() && object.getLiteral().toString().equals(p_null_string)) {
 			return false;
 		}
+		if (graphSuffix != null && graph.isURI()) {
+			if (!graph.equals(suffixedGraph)) {
+				suffixedGraph = graph;
+				suffixedGraphName = NodeFactory.createURI(graph.getURI().concat(graphSuffix));
+			}
+			graph = suffixedGraphName;
+		}
+		if (pipeline != null) {
+			pipeline.put(Quad.create(graph, subject, predicate, object));
+			return true;
+		}
+		return store(graph, subject, predicate, object);
+	}
+
+	private boolean store(Node graph, Node subject, Node predicate, Node object) {
+		if (loaderStream != null) {
+			// The loader sorts the ids of the nodes before adding them to the indexes, which skip duplicates
+			loaderStream.quad(Quad.create(graph, subject, predicate, object));
+			return true;
+		}
 		Triple t = Triple.create(subject, predicate, object);
-		if (datasetGraph.getGraph(graph).contains(t)) {
+		// Consecutive quads are usually in the same graph
+		if (!graph.equals(lastGraphName)) {
+			lastGraphName = graph;
+			lastGraph = datasetGraph.getGraph(graph);
+		}
+		if (lastGraph.contains(t)) {
 			return false;
 		}
-		datasetGraph.getGraph(graph).add(t);
+		lastGraph.add(t);
+		inMemoryTriples++;
+		if (isSpillNeeded()) {
+			spill();
+		}
 		return true;
 	}
 
+	private boolean isSpillNeeded() {
+		if (spillTriples >= 0) {
+			return inMemoryTriples > spillTriples;
+		}
+		if (spillHeapRatio >= 0 && inMemoryTriples % SPILL_HEAP_CHECK_INTERVAL == 1) {
+			Runtime runtime = Runtime.getRuntime();
+			return runtime.totalMemory() - runtime.freeMemory() > spillHeapRatio * runtime.maxMemory();
+		}
+		return false;
+	}
+
+	/**
+	 * Moves the triples added so far to a temporary on disk graph, where the following triples are added.
+	 */
+	private void spill() {
+		File location;
+		try {
+			location = Files.createTempDirectory(SPILL_PREFIX).toFile();
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+		log.debug("Moving {} triples to {}", inMemoryTriples, location);
+		DatasetGraph inMemory = datasetGraph;
+		datasetGraph = TDB2Factory.connectDataset(location.getAbsolutePath()).asDatasetGraph();
+		deleteOnExit(datasetGraph, location);
+		loader = createLoader(PropertyUtils.getStringProperty(properties, IRIArgument.ONDISK_LOADER), datasetGraph);
+		if (loader != null) {
+			loader.startBulk();
+			loaderStream = loader.stream();
+			inMemory.find().forEachRemaining(loaderStream::quad);
+		} else {
+			datasetGraph.begin(TxnType.WRITE);
+			inMemory.find().forEachRemaining(datasetGraph::add);
+		}
+		inMemory.abort();
+		inMemory.end();
+		lastGraphName = null;
+		spillTriples = -1;
+		spillHeapRatio = -1;
+	}
+
+	private static void deleteOnExit(DatasetGraph dg, File location) {
+		synchronized (spilled) {
+			if (!deleteOnExit) {
+				Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+					synchronized (spilled) {
+						spilled.forEach((d, l) -> delete(d, l.location));
+					}
+				}));
+				deleteOnExit = true;
+			}
+			spilled.put(dg, new Spilled(location));
+		}
+	}
+
+	private static void delete(DatasetGraph dg, File location) {
+		log.debug("Deleting {}", location);
+		TDBInternal.expel(dg, true);
+		FileUtils.deleteQuietly(location);
+	}
+
+	/**
+	 * @param dg a DatasetGraph returned by a builder
+	 * @return true if the graph was moved to a temporary on disk graph (see {@link IRIArgument#ONDISK_SPILL}), which
+	 * has not been released yet
+	 */
+	public static boolean isSpilled(DatasetGraph dg) {
+		synchronized (spilled) {
+			return spilled.containsKey(dg);
+		}
+	}
+
+	/**
+	 * Registers one more user of a temporary on disk graph, which has to {@link #release(DatasetGraph)} it. The builder
+	 * that created the graph counts as its first user.
+	 *
+	 * @param dg a DatasetGraph returned by a builder
+	 * @return false if the graph is a temporary graph that was already deleted
+	 */
+	public static boolean retain(DatasetGraph dg) {
+		synchronized (spilled) {
+			Spilled s = spilled.get(dg);
+			if (s != null) {
+				s.users++;
+				return true;
+			}
+		}
+		return !DatabaseMgr.isTDB2(dg) || !new File(DatabaseMgr.location(dg).getDirectoryPath()).getName().startsWith(SPILL_PREFIX);
+	}
+
+	/**
+	 * Releases a temporary on disk graph, which is deleted when it has no users left. Other graphs are left untouched.
+	 *
+	 * @param dg a DatasetGraph returned by a builder
+	 */
+	public static void release(DatasetGraph dg) {
+		synchronized (spilled) {
+			Spilled s = spilled.get(dg);
+			if (s == null || --s.users > 0) {
+				return;
+			}
+			spilled.remove(dg);
+			delete(dg, s.location);
+		}
+	}
+
+	private static class Spilled {
+		private final File location;
+		private int users = 1;
+
+		private Spilled(File location) {
+			this.location = location;
+		}
+	}
+
+	/**
+	 * Appends a suffix to the names of the graphs the following triples are added to, so that parts of the data
+	 * source (e.g. the slices of a batch) can be kept apart in the same DatasetGraph.
+	 *
+	 * @param graphSuffix the suffix, or null to use the original graph names
+	 */
+	public void setGraphSuffix(String graphSuffix) {
+		this.graphSuffix = graphSuffix;
+		this.suffixedGraph = null;
+	}
+
 	/**
 	 * This method returns triples from the union of all graphs.
 	 *
@@ -101,7 +432,21 @@ public class BaseFacadeXGraphBuilder extends BaseFacadeXBuilder implements Facad
 
 	@Override
 	public DatasetGraph getDatasetGraph() {
-		if (!DatabaseMgr.isTDB2(datasetGraph)) {
+		if (pipeline != null) {
+			closePipeline();
+		}
+		if (loader != null) {
+			loader.finishBulk();
+			loader = null;
+			loaderStream = null;
+			// As the other graphs, returned in a write transaction
+			datasetGraph.begin(TxnType.WRITE);
+		}
+		if (datasetGraph.getDefaultGraph() instanceof CompactGraph) {
+			// Compact graphs are sets, so the named graphs can be copied one by one without the distinct of the union
+			Graph defaultGraph = datasetGraph.getDefaultGraph();
+			datasetGraph.listGraphNodes().forEachRemaining(g -> GraphUtil.addInto(defaultGraph, datasetGraph.getGraph(g)));
+		} else if (!DatabaseMgr.isTDB2(datasetGraph)) {
 			// we have an in memory DatasetGraph
 			datasetGraph.addGraph(NodeFactory.createURI("urn:x-arq:DefaultGraph"), datasetGraph.getUnionGraph());
 //			datasetGraph.setDefaultGraph(datasetGraph.getUnionGraph());
@@ -0,0 +1,403 @@
+/*
+ * Copyright (c) 2023 SPARQL Anything Contributors @ http://github.com/sparql-anything
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.sparqlanything.model;
+
+import org.apache.jena.graph.GraphEvents;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.graph.impl.GraphBase;
+import org.apache.jena.sparql.core.DatasetGraph;
+import org.apache.jena.sparql.core.DatasetGraphMap;
+import org.apache.jena.util.iterator.ExtendedIterator;
+import org.apache.jena.util.iterator.NiceIterator;
+import org.apache.jena.util.iterator.NullIterator;
+
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+
+/**
+ * An in-memory graph for the highly repetitive triples of FacadeX. Nodes are encoded as int ids by a
+ * {@link NodeDictionary}, which is shared by the graphs of a dataset, and each triple is a row of three ids in a
+ * primitive array. A hash table of the row numbers keeps the triples a set.
+ * <p>
+ * The SPO, POS and OSP indexes, i.e. the row numbers sorted by the ids in the three orders, are built in bulk when the
+ * graph is first searched after a change, so that adding triples while triplifying only appends to the arrays. Small
+ * graphs are scanned instead.
+ * <p>
+ * As in the default in-memory graphs of Jena, literal objects are matched by value. The graph can be read
+ * concurrently once triples are no longer added.
+ */
+public class CompactGraph extends GraphBase {
+
+	private static final int[] SPO = {0, 1, 2};
+	private static final int[] POS = {1, 2, 0};
+	private static final int[] OSP = {2, 0, 1};
+	private static final int ANY = -1;
+	private static final int EMPTY = -1;
+	// Marks the subject of deleted rows, which no longer match any id
+	private static final int DELETED = -2;
+	private static final int SCAN_THRESHOLD = 64;
+
+	private final NodeDictionary dictionary;
+	private int[] rows = new int[3 * 16];
+	private int count = 0;
+	private int size = 0;
+	private int[] table = newTable(32);
+	// Slots of the table in use, including those of deleted rows
+	private int occupied = 0;
+	private volatile Indexes indexes = null;
+
+	public CompactGraph() {
+		this(new NodeDictionary());
+	}
+
+	public CompactGraph(NodeDictionary dictionary) {
+		this.dictionary = dictionary;
+	}
+
+	/**
+	 * @return an in-memory DatasetGraph whose graphs are CompactGraphs sharing the same dictionary
+	 */
+	public static DatasetGraph createDatasetGraph() {
+		NodeDictionary dictionary = new NodeDictionary();
+		return new DatasetGraphMap(name -> new CompactGraph(dictionary));
+	}
+
+	@Override
+	public void performAdd(Triple t) {
+		int s = dictionary.encode(t.getSubject());
+		int p = dictionary.encode(t.getPredicate());
+		int o = dictionary.encode(t.getObject());
+		if (findRow(s, p, o) >= 0) {
+			return;
+		}
+		if (3 * count == rows.length) {
+			rows = Arrays.copyOf(rows, rows.length * 2);
+		}
+		rows[3 * count] = s;
+		rows[3 * count + 1] = p;
+		rows[3 * count + 2] = o;
+		if (4 * (occupied + 1) > 3 * table.length) {
+			rehash();
+		}
+		insert(table, count);
+		occupied++;
+		count++;
+		size++;
+		indexes = null;
+	}
+
+	@Override
+	public void performDelete(Triple t) {
+		int s = dictionary.lookup(t.getSubject());
+		int p = dictionary.lookup(t.getPredicate());
+		int o = dictionary.lookup(t.getObject());
+		if (s < 0 || p < 0 || o < 0) {
+			return;
+		}
+		int row = findRow(s, p, o);
+		if (row >= 0) {
+			rows[3 * row] = DELETED;
+			size--;
+			indexes = null;
+		}
+	}
+
+	@Override
+	public void clear() {
+		rows = new int[3 * 16];
+		count = 0;
+		size = 0;
+		table = newTable(32);
+		occupied = 0;
+		indexes = null;
+		getEventManager().notifyEvent(this, GraphEvents.removeAll);
+	}
+
+	@Override
+	protected int graphBaseSize() {
+		return size;
+	}
+
+	@Override
+	protected boolean graphBaseContains(Triple t) {
+		if (!t.isConcrete()) {
+			return super.graphBaseContains(t);
+		}
+		int s = dictionary.lookup(t.getSubject());
+		int p = dictionary.lookup(t.getPredicate());
+		if (s < 0 || p < 0) {
+			return false;
+		}
+		for (int o : dictionary.lookupByValue(t.getObject())) {
+			if (findRow(s, p, o) >= 0) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	@Override
+	protected ExtendedIterator<Triple> graphBaseFind(Triple m) {
+		int s = ANY;
+		int p = ANY;
+		if (m.getSubject().isConcrete() && (s = dictionary.lookup(m.getSubject())) < 0) {
+			return NullIterator.instance();
+		}
+		if (m.getPredicate().isConcrete() && (p = dictionary.lookup(m.getPredicate())) < 0) {
+			return NullIterator.instance();
+		}
+		if (!m.getObject().isConcrete()) {
+			return find(s, p, ANY);
+		}
+		ExtendedIterator<Triple> result = NullIterator.instance();
+		for (int o : dictionary.lookupByValue(m.getObject())) {
+			result = result.andThen(find(s, p, o));
+		}
+		return result;
+	}
+
+	private ExtendedIterator<Triple> find(int s, int p, int o) {
+		if (s != ANY && p != ANY && o != ANY) {
+			int row = findRow(s, p, o);
+			return row < 0 ? NullIterator.instance() : new RowIterator(rows, new int[]{row}, 0, 1, s, p, o);
+		}
+		if ((s == ANY && p == ANY && o == ANY) || size < SCAN_THRESHOLD) {
+			return new RowIterator(rows, null, 0, count, s, p, o);
+		}
+		Indexes current = indexes();
+		if (s != ANY) {
+			return o != ANY ? range(current.osp, OSP, o, s) : range(current.spo, SPO, s, p);
+		} else if (p != ANY) {
+			return range(current.pos, POS, p, o);
+		} else {
+			return range(current.osp, OSP, o, ANY);
+		}
+	}
+
+	/**
+	 * @return the rows of the index whose first key is k0 and, if bound, second key is k1
+	 */
+	private ExtendedIterator<Triple> range(int[] index, int[] order, int k0, int k1) {
+		int from = bound(index, order, k0, k1, false);
+		int to = bound(index, order, k0, k1, true);
+		int[] key = new int[3];
+		Arrays.fill(key, ANY);
+		key[order[0]] = k0;
+		key[order[1]] = k1;
+		return new RowIterator(rows, index, from, to, key[0], key[1], key[2]);
+	}
+
+	private int bound(int[] index, int[] order, int k0, int k1, boolean upper) {
+		int low = 0;
+		int high = index.length;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			int row = index[mid];
+			int c = Integer.compare(rows[3 * row + order[0]], k0);
+			if (c == 0 && k1 != ANY) {
+				c = Integer.compare(rows[3 * row + order[1]], k1);
+			}
+			if (c < 0 || (upper && c == 0)) {
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+		return low;
+	}
+
+	private synchronized Indexes indexes() {
+		Indexes current = indexes;
+		if (current == null) {
+			int[] live = new int[size];
+			int n = 0;
+			for (int row = 0; row < count; row++) {
+				if (rows[3 * row] != DELETED) {
+					live[n++] = row;
+				}
+			}
+			current = new Indexes(sort(live, SPO), sort(live, POS), sort(live, OSP));
+			indexes = current;
+		}
+		return current;
+	}
+
+	private int[] sort(int[] live, int[] order) {
+		int ids = dictionary.size();
+		if (ids <= 4L * live.length) {
+			// Radix sort, least significant key first
+			int[] sorted = live;
+			for (int k = 2; k >= 0; k--) {
+				sorted = countingSort(sorted, order[k], ids);
+			}
+			return sorted;
+		}
+		// Few triples in a large dictionary
+		int[] sorted = live.clone();
+		mergeSort(sorted, live.clone(), 0, sorted.length, order);
+		return sorted;
+	}
+
+	private int[] countingSort(int[] in, int column, int ids) {
+		int[] starts = new int[ids + 1];
+		for (int row : in) {
+			starts[rows[3 * row + column] + 1]++;
+		}
+		for (int i = 1; i <= ids; i++) {
+			starts[i] += starts[i - 1];
+		}
+		int[] out = new int[in.length];
+		for (int row : in) {
+			out[starts[rows[3 * row + column]]++] = row;
+		}
+		return out;
+	}
+
+	private void mergeSort(int[] a, int[] tmp, int from, int to, int[] order) {
+		if (to - from < 2) {
+			return;
+		}
+		int mid = (from + to) >>> 1;
+		mergeSort(tmp, a, from, mid, order);
+		mergeSort(tmp, a, mid, to, order);
+		// Merge the halves sorted in tmp into a
+		for (int i = from, l = from, r = mid; i < to; i++) {
+			if (r >= to || (l < mid && compare(tmp[l], tmp[r], order) <= 0)) {
+				a[i] = tmp[l++];
+			} else {
+				a[i] = tmp[r++];
+			}
+		}
+	}
+
+	private int compare(int row1, int row2, int[] order) {
+		for (int column : order) {
+			int c = Integer.compare(rows[3 * row1 + column], rows[3 * row2 + column]);
+			if (c != 0) {
+				return c;
+			}
+		}
+		return 0;
+	}
+
+	private int findRow(int s, int p, int o) {
+		int mask = table.length - 1;
+		for (int i = hash(s, p, o) & mask; table[i] != EMPTY; i = (i + 1) & mask) {
+			int row = table[i];
+			if (rows[3 * row] == s && rows[3 * row + 1] == p && rows[3 * row + 2] == o) {
+				return row;
+			}
+		}
+		return -1;
+	}
+
+	private void insert(int[] table, int row) {
+		int mask = table.length - 1;
+		int i = hash(rows[3 * row], rows[3 * row + 1], rows[3 * row + 2]) & mask;
+		while (table[i] != EMPTY) {
+			i = (i + 1) & mask;
+		}
+		table[i] = row;
+	}
+
+	private void rehash() {
+		int capacity = table.length;
+		while (4 * (size + 1) > 3 * capacity / 2) {
+			capacity *= 2;
+		}
+		// The slots of deleted rows are dropped
+		int[] rehashed = newTable(capacity);
+		for (int row = 0; row < count; row++) {
+			if (rows[3 * row] != DELETED) {
+				insert(rehashed, row);
+			}
+		}
+		table = rehashed;
+		occupied = size;
+	}
+
+	private static int[] newTable(int capacity) {
+		int[] table = new int[capacity];
+		Arrays.fill(table, EMPTY);
+		return table;
+	}
+
+	private static int hash(int s, int p, int o) {
+		int h = s * 0x9E3779B1;
+		h = (h ^ p) * 0x85EBCA6B;
+		h = (h ^ o) * 0xC2B2AE35;
+		return h ^ (h >>> 16);
+	}
+
+	private static final class Indexes {
+		private final int[] spo;
+		private final int[] pos;
+		private final int[] osp;
+
+		private Indexes(int[] spo, int[] pos, int[] osp) {
+			this.spo = spo;
+			this.pos = pos;
+			this.osp = osp;
+		}
+	}
+
+	/**
+	 * Iterates over the rows (all of them, or those in a range of an index) matching the ids.
+	 */
+	private final class RowIterator extends NiceIterator<Triple> {
+		private final int[] rows;
+		private final int[] index;
+		private final int to;
+		private final int s;
+		private final int p;
+		private final int o;
+		private int position;
+		private int next = -1;
+
+		private RowIterator(int[] rows, int[] index, int from, int to, int s, int p, int o) {
+			this.rows = rows;
+			this.index = index;
+			this.position = from;
+			this.to = to;
+			this.s = s;
+			this.p = p;
+			this.o = o;
+		}
+
+		@Override
+		public boolean hasNext() {
+			while (next < 0 && position < to) {
+				int row = index == null ? position : index[position];
+				position++;
+				if (rows[3 * row] != DELETED && (s == ANY || rows[3 * row] == s) && (p == ANY || rows[3 * row + 1] == p) && (o == ANY || rows[3 * row + 2] == o)) {
+					next = row;
+				}
+			}
+			return next >= 0;
+		}
+
+		@Override
+		public Triple next() {
+			if (!hasNext()) {
+				throw new NoSuchElementException();
+			}
+			int row = next;
+			next = -1;
+			return Triple.create(dictionary.decode(rows[3 * row]), dictionary.decode(rows[3 * row + 1]), dictionary.decode(rows[3 * row + 2]));
+		}
+	}
+}
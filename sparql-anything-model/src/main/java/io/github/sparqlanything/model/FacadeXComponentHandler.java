@@ -17,6 +17,7 @@
 package io.github.sparqlanything.model;
 
 import java.net.URI;
+import java.util.List;
 
 /**
  * This class adds to the resulting Dataset FacadeX components, namely the root of the FacadeX model and containers.
@@ -110,4 +111,14 @@ public interface FacadeXComponentHandler {
 	 */
 	boolean addRoot(String dataSourceId);
 
+	/**
+	 * Tells whether the content of a container can be part of the result, so that triplifiers can skip the containers that are not needed.
+	 * @param dataSourceId the identifier of the data source of the container
+	 * @param path the keys (String, Integer or URI, as passed to addContainer) linking the root to the container
+	 * @return false if nothing about the container and the containers nested in it is needed, true otherwise
+	 */
+	default boolean isNeeded(String dataSourceId, List<Object> path) {
+		return true;
+	}
+
 }
@@ -16,6 +16,7 @@
 
 package io.github.sparqlanything.model;
 
+import org.apache.jena.datatypes.xsd.XSDDatatype;
 import org.apache.jena.graph.Node;
 import org.apache.jena.graph.NodeFactory;
 import org.apache.jena.rdf.model.ResourceFactory;
@@ -45,6 +46,15 @@ public interface FacadeXNodeBuilder {
 	default Node value2node(Object value) {
 		if (value instanceof Node) {
 			return (Node) value;
+		} else if (value instanceof String) {
+			// The datatypes the triplifiers use the most, without looking them up by the class of the value
+			return NodeFactory.createLiteralByValue(value, XSDDatatype.XSDstring);
+		} else if (value instanceof Integer) {
+			return NodeFactory.createLiteralByValue(value, XSDDatatype.XSDint);
+		} else if (value instanceof Double) {
+			return NodeFactory.createLiteralByValue(value, XSDDatatype.XSDdouble);
+		} else if (value instanceof Boolean) {
+			return NodeFactory.createLiteralByValue(value, XSDDatatype.XSDboolean);
 		} else {
 			return ResourceFactory.createTypedLiteral(value).asNode();
 		}
@@ -25,6 +25,7 @@ import org.apache.http.ProtocolVersion;
 import org.apache.http.auth.AuthScope;
 import org.apache.http.auth.UsernamePasswordCredentials;
 import org.apache.http.client.CredentialsProvider;
+import org.apache.http.client.config.RequestConfig;
 import org.apache.http.client.entity.UrlEncodedFormEntity;
 import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpDelete;
@@ -36,13 +37,21 @@ import org.apache.http.client.methods.HttpPost;
 import org.apache.http.client.methods.HttpPut;
 import org.apache.http.client.methods.HttpTrace;
 import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.client.protocol.HttpClientContext;
 import org.apache.http.client.utils.URIBuilder;
+import org.apache.http.config.Registry;
+import org.apache.http.config.RegistryBuilder;
+import org.apache.http.conn.socket.ConnectionSocketFactory;
+import org.apache.http.conn.socket.PlainConnectionSocketFactory;
+import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
 import org.apache.http.entity.BasicHttpEntity;
 import org.apache.http.impl.client.BasicCredentialsProvider;
 import org.apache.http.impl.client.CloseableHttpClient;
 import org.apache.http.impl.client.HttpClientBuilder;
 import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.client.IdleConnectionEvictor;
 import org.apache.http.impl.client.LaxRedirectStrategy;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
 import org.apache.http.message.BasicHeader;
 import org.apache.http.message.BasicNameValuePair;
 import org.slf4j.Logger;
@@ -56,9 +65,12 @@ import java.net.URISyntaxException;
 import java.net.URL;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
 
 /**
  * HTTP Helper
@@ -80,6 +92,27 @@ public class HTTPHelper {
     public static final String HTTPPAUTHUSER = "http.auth.user";
     public static final String HTTPPAUTHPASSWORD = "http.auth.password";
     public static final String HTTPFOLLOWREDIRECT = "http.redirect";
+    public static final String HTTPCACHE = "http.cache";
+    public static final String HTTPCACHEDIR = "http.cache.dir";
+    public static final String HTTPCACHEMAXSIZE = "http.cache.max-size";
+    public static final String HTTPPOOL = "http.pool";
+
+    // Connection pooling
+    public static final int POOL_MAX_PER_ROUTE = 20;
+    public static final int POOL_MAX_TOTAL = 200;
+    public static final long POOL_IDLE_TIMEOUT_SECONDS = 30;
+    // How long a request waits for a connection of the pool
+    public static final int POOL_REQUEST_TIMEOUT_MILLIS = 60000;
+    private static final int MAX_CLIENTS = 100;
+    // Clients share the connection managers, so the least recently used ones can be dropped without closing them
+    private static final Map<String, CloseableHttpClient> clients = new LinkedHashMap<String, CloseableHttpClient>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, CloseableHttpClient> eldest) {
+            return size() > MAX_CLIENTS;
+        }
+    };
+    private static PoolingHttpClientConnectionManager systemConnectionManager;
+    private static PoolingHttpClientConnectionManager defaultConnectionManager;
 
     public static final String[] RELEVANT_PROPERTIES = new String[]{
             HTTPCLIENT_PREFIX,   HTTPHEADER_PREFIX, HTTPQUERY_PREFIX, HTTPFORM_PREFIX, HTTPMETHOD, HTTPPAYLOAD, HTTPPROTOCOL, HTTPFOLLOWREDIRECT
@@ -132,7 +165,7 @@ public class HTTPHelper {
         //        http.maxConnections
         //        http.agent
         HttpClientBuilder builder = HttpClients.custom();
-        if(!properties.containsKey(HTTPCLIENT_PREFIX + "useSystemProperties") || Boolean.parseBoolean((String)properties.get(HTTPCLIENT_PREFIX + "useSystemProperties"))){
+        if(useSystemProperties(properties)){
             builder.useSystemProperties();
         }
 
@@ -187,14 +220,22 @@ public class HTTPHelper {
         }
 
         // Authentication
+        CredentialsProvider credsProvider = getCredentialsProvider(url, properties);
+        if(credsProvider != null) {
+            builder.setDefaultCredentialsProvider(credsProvider);
+        }
+        return builder;
+    }
+
+    private static CredentialsProvider getCredentialsProvider(URL url, Properties properties) {
         if(properties.containsKey(HTTPPAUTHUSER) && properties.containsKey(HTTPPAUTHPASSWORD)) {
             CredentialsProvider credsProvider = new BasicCredentialsProvider();
             credsProvider.setCredentials(
                     new AuthScope(url.getHost(), url.getPort()),
                     new UsernamePasswordCredentials((String) properties.get(HTTPPAUTHUSER), (String) properties.get(HTTPPAUTHPASSWORD)));
-            builder.setDefaultCredentialsProvider(credsProvider);
+            return credsProvider;
         }
-        return builder;
+        return null;
     }
 
     public static HttpUriRequest buildRequest(URL url, Properties properties) {
@@ -351,10 +392,82 @@ public class HTTPHelper {
         return response.getStatusLine().getStatusCode() >= 500 && response.getStatusLine().getStatusCode() <= 599;
     }
 
+    private static boolean useSystemProperties(Properties properties){
+        return !properties.containsKey(HTTPCLIENT_PREFIX + "useSystemProperties") || Boolean.parseBoolean((String)properties.get(HTTPCLIENT_PREFIX + "useSystemProperties"));
+    }
+
+    /**
+     * Connections are shared by all the clients having the same SSL setup, i.e. using (or not) the system properties.
+     */
+    private static synchronized PoolingHttpClientConnectionManager getConnectionManager(boolean systemProperties){
+        PoolingHttpClientConnectionManager cm = systemProperties ? systemConnectionManager : defaultConnectionManager;
+        if(cm == null){
+            Registry<ConnectionSocketFactory> registry = RegistryBuilder.<ConnectionSocketFactory>create()
+                    .register("http", PlainConnectionSocketFactory.getSocketFactory())
+                    .register("https", systemProperties ? SSLConnectionSocketFactory.getSystemSocketFactory() : SSLConnectionSocketFactory.getSocketFactory())
+                    .build();
+            cm = new PoolingHttpClientConnectionManager(registry);
+            cm.setDefaultMaxPerRoute(POOL_MAX_PER_ROUTE);
+            cm.setMaxTotal(POOL_MAX_TOTAL);
+            new IdleConnectionEvictor(cm, POOL_IDLE_TIMEOUT_SECONDS, TimeUnit.SECONDS).start();
+            if(systemProperties){
+                systemConnectionManager = cm;
+            }else{
+                defaultConnectionManager = cm;
+            }
+        }
+        return cm;
+    }
+
+    /**
+     * The options used to set up a pooled client, and its key. Credentials are not among them: they are given with
+     * each request, so that they are not kept with the client.
+     */
+    private static Properties clientProperties(Properties properties){
+        Properties clientProperties = new Properties();
+        for(String p : properties.stringPropertyNames()){
+            if(isProperty(HTTPCLIENT_PREFIX, p) || p.equals(HTTPFOLLOWREDIRECT)){
+                clientProperties.setProperty(p, properties.getProperty(p));
+            }
+        }
+        return clientProperties;
+    }
+
+    /**
+     * Returns a client configured according to the properties. Clients are reused across requests having the same
+     * configuration and share a pool of connections, so that connections to the same host are kept alive, unless the
+     * option {@link #HTTPPOOL} is set to false.
+     *
+     * @param url the URL to be requested
+     * @param properties the triplification properties
+     * @return the client
+     */
+    public static CloseableHttpClient getClient(URL url, Properties properties) {
+        if(!isPooled(properties)){
+            return setupClientBuilder(url, properties).build();
+        }
+        Properties clientProperties = clientProperties(properties);
+        String key = new TreeMap<>(clientProperties).toString();
+        synchronized (clients) {
+            return clients.computeIfAbsent(key, k -> {
+                log.debug("New pooled HTTP client: {}", k);
+                HttpClientBuilder builder = setupClientBuilder(url, clientProperties);
+                builder.setConnectionManager(getConnectionManager(useSystemProperties(clientProperties)));
+                builder.setConnectionManagerShared(true);
+                // Waits for a connection of the pool for a limited time, rather than forever
+                builder.setDefaultRequestConfig(RequestConfig.custom().setConnectionRequestTimeout(POOL_REQUEST_TIMEOUT_MILLIS).build());
+                return builder.build();
+            });
+        }
+    }
+
+    private static boolean isPooled(Properties properties){
+        return Boolean.parseBoolean(properties.getProperty(HTTPPOOL, "true"));
+    }
+
     public static final CloseableHttpResponse getInputStream(URL url, Properties properties) throws IOException {
         log.debug("Downloading via HTTP Client");
-        HttpClientBuilder builder = HTTPHelper.setupClientBuilder(url, properties);
-        CloseableHttpClient client = builder.build();
+        CloseableHttpClient client = getClient(url, properties);
         HttpUriRequest request = HTTPHelper.buildRequest(url, properties);
         if(log.isDebugEnabled()){
             log.debug("* Request line: {}", request.getRequestLine());
@@ -362,7 +475,15 @@ public class HTTPHelper {
                 log.debug("> {}: {}", h.getName(), h.getValue());
             }
         }
-        CloseableHttpResponse response = client.execute(request);
+        HttpClientContext context = HttpClientContext.create();
+        if(isPooled(properties)){
+            // Pooled clients are shared, the credentials are set for this request only
+            CredentialsProvider credsProvider = getCredentialsProvider(url, properties);
+            if(credsProvider != null){
+                context.setCredentialsProvider(credsProvider);
+            }
+        }
+        CloseableHttpResponse response = client.execute(request, context);
         log.debug("* Status line: {}", response.getStatusLine());
         for(Header h: response.getAllHeaders()) {
             log.debug("< {}: {}", h.getName(), h.getValue());
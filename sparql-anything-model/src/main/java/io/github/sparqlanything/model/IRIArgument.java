@@ -32,10 +32,20 @@ public class IRIArgument {
 	public static final IRIArgument NULL_STRING = new IRIArgument("null-string");
 	public static final IRIArgument STRATEGY = new IRIArgument("strategy", "1");
 	public static final IRIArgument SLICE = new IRIArgument("slice", "false");
+	public static final IRIArgument SLICE_THREADS = new IRIArgument("slice.threads", "1");
+	public static final IRIArgument SLICE_ORDERED = new IRIArgument("slice.ordered", "true");
+	public static final IRIArgument SLICE_BATCH_SIZE = new IRIArgument("slice.batch-size", "1");
+	public static final IRIArgument SLICE_SPILL_THRESHOLD = new IRIArgument("slice.spill-threshold", "100000");
 	public static final IRIArgument COMMAND = new IRIArgument("command");
 	public static final IRIArgument USE_RDFS_MEMBER = new IRIArgument("use-rdfs-member", "false");
 	public static final IRIArgument ONDISK_REUSE = new IRIArgument("ondisk.reuse", "true");
 	public static final IRIArgument ONDISK = new IRIArgument("ondisk");
+	public static final IRIArgument ONDISK_LOADER = new IRIArgument("ondisk.loader", "basic");
+	public static final IRIArgument ONDISK_SPILL = new IRIArgument("ondisk.spill");
+	public static final IRIArgument COMPACT = new IRIArgument("compact", "false");
+	public static final IRIArgument VIRTUAL = new IRIArgument("virtual", "false");
+	public static final IRIArgument PIPELINE = new IRIArgument("pipeline", "false");
+	public static final IRIArgument SNAPSHOT = new IRIArgument("snapshot");
 	public static final IRIArgument OP_SERVICE_SILENT = new IRIArgument("opservice.silent");
 	public static final IRIArgument ANNOTATE_TRIPLES_WITH_SLOT_KEYS = new IRIArgument("annotate-triples-with-slot-keys", "false");
 
@@ -0,0 +1,366 @@
+/*
+ * Copyright (c) 2023 SPARQL Anything Contributors @ http://github.com/sparql-anything
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.sparqlanything.model;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.http.Header;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilterInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+
+/**
+ * An on-disk cache of resources downloaded via HTTP.
+ * <p>
+ * Bodies are stored in the cache directory (by default ~/.fx), keyed by the URL and the HTTP options relevant to the
+ * request. Each body has a sidecar file with the validators returned by the server (ETag, Last-Modified), which are
+ * used to revalidate the stored copy with a conditional request: when the server answers 304 (Not Modified) the stored
+ * copy is used without downloading it again. When the cache exceeds its maximum size, the least recently used bodies
+ * are deleted.
+ * <p>
+ * The cache is enabled with the option {@link HTTPHelper#HTTPCACHE} and only applies to GET requests.
+ */
+public class LocalCache {
+
+    private static final Logger log = LoggerFactory.getLogger(LocalCache.class);
+    public final static String DIRNAME = ".fx";
+    public final static long DEFAULT_MAX_SIZE = 1024L * 1024L * 1024L;
+    private final static String BODY = ".body";
+    private final static String META = ".properties";
+    private final static String URL_KEY = "url";
+    private final static String TMP = ".tmp";
+    private final static String ETAG = "etag";
+    private final static String LAST_MODIFIED = "last-modified";
+    private final static Object lock = new Object();
+    // How many times a body evicted before it could be opened is downloaded again
+    private final static int MAX_ATTEMPTS = 3;
+    private File location;
+    private long maxSize = DEFAULT_MAX_SIZE;
+
+    public LocalCache(){
+        this(System.getProperty("user.home"));
+    }
+
+    public LocalCache(String baseDir){
+        File userHome = new File(baseDir);
+        if(userHome.isDirectory()){
+            location = new File(userHome, DIRNAME);
+        }else{
+            throw new RuntimeException("Not a directory: " + userHome);
+        }
+    }
+
+    public LocalCache(File location, long maxSize){
+        this.location = location;
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * @param properties the triplification properties
+     * @return true if the cache was enabled with the option {@link HTTPHelper#HTTPCACHE}
+     */
+    public static boolean isEnabled(Properties properties){
+        return Boolean.parseBoolean(properties.getProperty(HTTPHelper.HTTPCACHE, "false"));
+    }
+
+    /**
+     * @param properties the triplification properties
+     * @return the cache configured with the options {@link HTTPHelper#HTTPCACHEDIR} and {@link HTTPHelper#HTTPCACHEMAXSIZE}
+     */
+    public static LocalCache fromProperties(Properties properties){
+        long maxSize = DEFAULT_MAX_SIZE;
+        if(properties.containsKey(HTTPHelper.HTTPCACHEMAXSIZE)){
+            try {
+                maxSize = Long.parseLong(properties.getProperty(HTTPHelper.HTTPCACHEMAXSIZE));
+            } catch (NumberFormatException e){
+                log.warn("Invalid value for {}: {}, using {}", HTTPHelper.HTTPCACHEMAXSIZE, properties.getProperty(HTTPHelper.HTTPCACHEMAXSIZE), DEFAULT_MAX_SIZE);
+            }
+        }
+        if(properties.containsKey(HTTPHelper.HTTPCACHEDIR)){
+            return new LocalCache(new File(properties.getProperty(HTTPHelper.HTTPCACHEDIR)), maxSize);
+        }
+        return new LocalCache(new File(System.getProperty("user.home"), DIRNAME), maxSize);
+    }
+
+    public File getLocation(){
+        return location;
+    }
+
+    /**
+     * Returns the content of the resource, from the cache or downloaded (see {@link #download(URL, Properties)}). A
+     * temporary copy of a response that cannot be stored is deleted when the stream is closed.
+     */
+    public InputStream getInputStream(URL url, Properties properties) throws IOException, TriplifierHTTPException {
+        for(int attempt = 1; attempt <= MAX_ATTEMPTS; attempt++) {
+            File file = download(url, properties);
+            if(file.getName().endsWith(TMP)){
+                return new TemporaryFileInputStream(file);
+            }
+            // Opened files are not affected by the eviction
+            synchronized (lock) {
+                if(file.isFile()){
+                    return new FileInputStream(file);
+                }
+            }
+            log.debug("{} was evicted before being opened", file);
+        }
+        throw new IOException("Cannot keep " + url + " in the cache, which may be too small");
+    }
+
+    private static class TemporaryFileInputStream extends FilterInputStream {
+        private final File file;
+
+        private TemporaryFileInputStream(File file) throws IOException {
+            super(new FileInputStream(file));
+            this.file = file;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                super.close();
+            } finally {
+                if(!file.delete()){
+                    log.trace("Cannot delete {}", file);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns a local copy of the resource, downloading it if it is not in the cache or if the copy in the cache is
+     * stale.
+     *
+     * @param url the URL of the resource
+     * @param properties the triplification properties
+     * @return the local copy, or a temporary copy to be deleted by the caller if the response cannot be stored
+     * @throws IllegalArgumentException if the URL is not an HTTP URL or the request is not a GET
+     * @throws IOException if the resource cannot be downloaded
+     * @throws TriplifierHTTPException if the server answers with an error
+     */
+    public File download(URL url, Properties properties) throws IllegalArgumentException, IOException, TriplifierHTTPException {
+        // If local throw exception
+        if(url.getProtocol().equals("file")){
+            throw new IllegalArgumentException("Cannot download a local file");
+        }
+        if(!url.getProtocol().equals("http") && !url.getProtocol().equals("https")){
+            throw new IllegalArgumentException("Unsupported protocol: " + url.getProtocol());
+        }
+        if(!properties.getProperty(HTTPHelper.HTTPMETHOD, "GET").equalsIgnoreCase("GET")){
+            throw new IllegalArgumentException("Only GET requests can be cached");
+        }
+        String key = key(url, properties);
+        File body = new File(location, key + BODY);
+        File meta = new File(location, key + META);
+        Properties stored = readMeta(body, meta);
+
+        // Revalidate the stored copy, if any
+        Properties request = new Properties();
+        request.putAll(properties);
+        if(stored != null){
+            if(stored.containsKey(ETAG)){
+                request.setProperty(HTTPHelper.HTTPHEADER_PREFIX + "If-None-Match", stored.getProperty(ETAG));
+            }
+            if(stored.containsKey(LAST_MODIFIED)){
+                request.setProperty(HTTPHelper.HTTPHEADER_PREFIX + "If-Modified-Since", stored.getProperty(LAST_MODIFIED));
+            }
+        }
+
+        try (CloseableHttpResponse response = HTTPHelper.getInputStream(url, request)) {
+            if(stored != null && response.getStatusLine().getStatusCode() == HttpStatus.SC_NOT_MODIFIED){
+                log.debug("Not modified, using cached copy of {}", url);
+                touch(meta);
+                return body;
+            }
+            if(!HTTPHelper.isSuccessful(response)){
+                throw new TriplifierHTTPException(response.getStatusLine().toString());
+            }
+            Files.createDirectories(location.toPath());
+            if(isNoStore(response)){
+                // The response must not be kept, use a temporary copy
+                log.debug("Response of {} cannot be stored", url);
+                delete(url, properties);
+                File tmp = File.createTempFile(key, TMP, location);
+                tmp.deleteOnExit();
+                write(response, tmp);
+                return tmp;
+            }
+            File tmp = File.createTempFile(key, TMP, location);
+            write(response, tmp);
+            Files.move(tmp.toPath(), body.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            writeMeta(url, response, meta);
+            log.debug("Stored {} in {}", url, body);
+        }
+        evict();
+        return body;
+    }
+
+    /**
+     * @param url the URL of the resource
+     * @param properties the triplification properties
+     * @return the copy of the resource in the cache (without revalidating it), or null
+     */
+    public File find(URL url, Properties properties) throws IllegalArgumentException{
+        String key = key(url, properties);
+        File body = new File(location, key + BODY);
+        if(readMeta(body, new File(location, key + META)) == null){
+            return null;
+        }
+        return body;
+    }
+
+    public File find(URL url) throws IllegalArgumentException{
+        return find(url, new Properties());
+    }
+
+    public boolean delete(URL url, Properties properties) throws IllegalArgumentException {
+        String key = key(url, properties);
+        boolean found = new File(location, key + BODY).delete();
+        new File(location, key + META).delete();
+        return found;
+    }
+
+    private static String key(URL url, Properties properties){
+        Map<String,String> sorted = new TreeMap<>();
+        Properties relevant = HTTPHelper.relevantProperties(properties);
+        for(String p : relevant.stringPropertyNames()){
+            sorted.put(p, relevant.getProperty(p));
+        }
+        // Responses may differ from user to user
+        if(properties.containsKey(HTTPHelper.HTTPPAUTHUSER)){
+            sorted.put(HTTPHelper.HTTPPAUTHUSER, properties.getProperty(HTTPHelper.HTTPPAUTHUSER));
+        }
+        return DigestUtils.sha256Hex(url.toString() + "\n" + sorted);
+    }
+
+    private static Properties readMeta(File body, File meta){
+        if(!body.isFile() || !meta.isFile()){
+            return null;
+        }
+        Properties stored = new Properties();
+        try (InputStream is = new FileInputStream(meta)) {
+            stored.load(is);
+        } catch (IOException e) {
+            log.warn("Cannot read {}", meta);
+            return null;
+        }
+        return stored;
+    }
+
+    private static void writeMeta(URL url, CloseableHttpResponse response, File meta) throws IOException {
+        Properties stored = new Properties();
+        stored.setProperty(URL_KEY, url.toString());
+        Header etag = response.getFirstHeader("ETag");
+        if(etag != null){
+            stored.setProperty(ETAG, etag.getValue());
+        }
+        Header lastModified = response.getFirstHeader("Last-Modified");
+        if(lastModified != null){
+            stored.setProperty(LAST_MODIFIED, lastModified.getValue());
+        }
+        File tmp = File.createTempFile(meta.getName(), TMP, meta.getParentFile());
+        try (OutputStream os = new FileOutputStream(tmp)) {
+            stored.store(os, null);
+        }
+        Files.move(tmp.toPath(), meta.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static void write(CloseableHttpResponse response, File file) throws IOException {
+        try (InputStream is = response.getEntity().getContent()) {
+            Files.copy(is, file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            // Partial copies are not kept
+            file.delete();
+            throw e;
+        }
+    }
+
+    private static boolean isNoStore(CloseableHttpResponse response){
+        for(Header h : response.getHeaders("Cache-Control")){
+            if(h.getValue().toLowerCase().contains("no-store")){
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void touch(File meta){
+        if(!meta.setLastModified(System.currentTimeMillis())){
+            log.trace("Cannot update the access time of {}", meta);
+        }
+    }
+
+    /**
+     * Deletes the least recently used bodies until the size of the cache is below the maximum size. Temporary files,
+     * which are in use, count towards the size but are not deleted.
+     */
+    private void evict(){
+        synchronized (lock) {
+            File[] files = location.listFiles((dir, name) -> name.endsWith(BODY) || name.endsWith(TMP));
+            if(files == null){
+                return;
+            }
+            long size = 0;
+            List<File> entries = new ArrayList<>();
+            for(File f : files){
+                size += f.length();
+                if(f.getName().endsWith(BODY)){
+                    entries.add(f);
+                }
+            }
+            if(size <= maxSize){
+                return;
+            }
+            entries.sort(Comparator.comparingLong(this::lastAccess));
+            for(File b : entries){
+                if(size <= maxSize){
+                    break;
+                }
+                long length = b.length();
+                String key = b.getName().substring(0, b.getName().length() - BODY.length());
+                if(b.delete()){
+                    size -= length;
+                    new File(location, key + META).delete();
+                    log.debug("Evicted {}", b);
+                }
+            }
+        }
+    }
+
+    private long lastAccess(File body){
+        String key = body.getName().substring(0, body.getName().length() - BODY.length());
+        File meta = new File(location, key + META);
+        return meta.isFile() ? meta.lastModified() : body.lastModified();
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright (c) 2023 SPARQL Anything Contributors @ http://github.com/sparql-anything
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.sparqlanything.model;
+
+import org.apache.jena.datatypes.xsd.XSDDatatype;
+import org.apache.jena.graph.Node;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Encodes nodes as consecutive int ids, each distinct node being stored once.
+ * <p>
+ * Typed literals (other than strings) are also indexed by value, so that they can be matched by value, e.g.
+ * "1"^^xsd:int with "01"^^xsd:int, as the default in-memory graphs of Jena do.
+ * <p>
+ * Encoding is not thread safe, while decoding and lookups can run concurrently once nodes are no longer added.
+ */
+public final class NodeDictionary {
+
+	private static final int[] NONE = new int[0];
+
+	private final Map<Node, Integer> ids = new HashMap<>();
+	private final Map<Object, int[]> byValue = new HashMap<>();
+	private Node[] nodes = new Node[64];
+	private int size = 0;
+
+	/**
+	 * @return the id of the node, added to the dictionary if not there yet
+	 */
+	public int encode(Node node) {
+		Integer id = ids.get(node);
+		if (id != null) {
+			return id;
+		}
+		if (size == nodes.length) {
+			nodes = Arrays.copyOf(nodes, size * 2);
+		}
+		nodes[size] = node;
+		ids.put(node, size);
+		if (isMatchedByValue(node)) {
+			byValue.merge(node.getIndexingValue(), new int[]{size}, NodeDictionary::concat);
+		}
+		return size++;
+	}
+
+	/**
+	 * @return the id of the node, or -1 if it is not in the dictionary
+	 */
+	public int lookup(Node node) {
+		Integer id = ids.get(node);
+		return id == null ? -1 : id;
+	}
+
+	/**
+	 * @return the ids of the nodes with the same value as the given one (the node itself if it is not a typed literal)
+	 */
+	public int[] lookupByValue(Node node) {
+		if (!isMatchedByValue(node)) {
+			int id = lookup(node);
+			return id < 0 ? NONE : new int[]{id};
+		}
+		int[] candidates = byValue.get(node.getIndexingValue());
+		if (candidates == null) {
+			return NONE;
+		}
+		int[] matches = new int[candidates.length];
+		int found = 0;
+		for (int candidate : candidates) {
+			if (nodes[candidate].sameValueAs(node)) {
+				matches[found++] = candidate;
+			}
+		}
+		return found == matches.length ? matches : Arrays.copyOf(matches, found);
+	}
+
+	public Node decode(int id) {
+		return nodes[id];
+	}
+
+	public int size() {
+		return size;
+	}
+
+	private static boolean isMatchedByValue(Node node) {
+		return node.isLiteral() && !XSDDatatype.XSDstring.equals(node.getLiteralDatatype());
+	}
+
+	private static int[] concat(int[] a, int[] b) {
+		int[] c = Arrays.copyOf(a, a.length + b.length);
+		System.arraycopy(b, 0, c, a.length, b.length);
+		return c;
+	}
+}
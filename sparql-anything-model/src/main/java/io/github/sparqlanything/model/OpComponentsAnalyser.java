@@ -23,53 +23,192 @@ import org.apache.jena.sparql.algebra.Op;
 import org.apache.jena.sparql.algebra.OpVisitor;
 import org.apache.jena.sparql.algebra.op.*;
 import org.apache.jena.sparql.core.Quad;
+import org.apache.jena.sparql.core.Var;
+import org.apache.jena.sparql.engine.binding.BindingFactory;
 import org.apache.jena.sparql.expr.*;
+import org.apache.jena.sparql.function.FunctionEnv;
+import org.apache.jena.sparql.function.FunctionEnvBase;
 import org.apache.jena.sparql.path.*;
+import org.apache.jena.vocabulary.RDF;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 public class OpComponentsAnalyser implements OpVisitor {
 	private final Logger log = LoggerFactory.getLogger(OpComponentsAnalyser.class);
 	private static final Node unionGraph = NodeFactory.createURI("urn:x-arq:UnionGraph");
+	private static final String RDF_SLOT_PREFIX = "http://www.w3.org/1999/02/22-rdf-syntax-ns#_";
 	private final List<Object> opComponents = new ArrayList<Object>();
+	// The constraints on the subject and object of each component, derived from the filters in scope
+	private final List<Constraint[]> constraints = new ArrayList<>();
+	private final List<Expr> filtersInScope = new ArrayList<>();
+	private volatile Index index = null;
+	// The triple patterns of each conjunctive scope, used to find the paths from the root they can match
+	private final List<List<Triple>> scopes = new ArrayList<>();
+	private List<Triple> scope = null;
+	private boolean unscoped = false;
+	private volatile Paths paths = null;
+
+	// The analysers of the operations seen recently, least recently used first
+	private static final int MAX_CACHED_OPS = 256;
+	private static final Map<Op, OpComponentsAnalyser> analysed = Collections.synchronizedMap(new LinkedHashMap<Op, OpComponentsAnalyser>(16, 0.75f, true) {
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<Op, OpComponentsAnalyser> eldest) {
+			return size() > MAX_CACHED_OPS;
+		}
+	});
+
+	/**
+	 * Returns the analyser of the operation, reusing the one of an equal operation analysed before (a postponed SERVICE
+	 * clause is executed once per solution, often with the same operation). The analyser returned is shared, hence it
+	 * must not visit other operations.
+	 *
+	 * @param op the operation
+	 * @return the analyser, having visited the operation
+	 */
+	public static OpComponentsAnalyser of(Op op) {
+		OpComponentsAnalyser analyser = analysed.get(op);
+		if (analyser == null) {
+			analyser = new OpComponentsAnalyser();
+			op.visit(analyser);
+			analysed.put(op, analyser);
+		}
+		return analyser;
+	}
 
 	public List<Object> getOpComponents() {
 		return Collections.unmodifiableList(opComponents);
 	}
 
+	private void addComponent(Object component) {
+		opComponents.add(component);
+		constraints.add(constraintsOf(component));
+		unscoped = true;
+	}
+
+	private void addScopedComponent(Object component, Triple triple) {
+		opComponents.add(component);
+		constraints.add(constraintsOf(component));
+		if (scope == null) {
+			scope = new ArrayList<>();
+			scopes.add(scope);
+		}
+		scope.add(triple);
+	}
+
+	/**
+	 * Visits an operation whose patterns are not joined with the ones of the current scope (e.g. a branch of a UNION).
+	 */
+	private void visitInNewScope(Op op) {
+		List<Triple> saved = scope;
+		scope = null;
+		op.visit(this);
+		scope = saved;
+	}
+
+	private Constraint[] constraintsOf(Object component) {
+		if (filtersInScope.isEmpty()) {
+			return null;
+		}
+		Node subject, object;
+		if (component instanceof Quad) {
+			subject = ((Quad) component).getSubject();
+			object = ((Quad) component).getObject();
+		} else if (component instanceof Triple) {
+			subject = ((Triple) component).getSubject();
+			object = ((Triple) component).getObject();
+		} else {
+			return null;
+		}
+		List<Constraint> result = new ArrayList<>();
+		for (Expr e : filtersInScope) {
+			Var var = ExprVars.getVarsMentioned(e).iterator().next();
+			if (var.equals(subject)) {
+				result.add(new Constraint(true, var, e));
+			}
+			if (var.equals(object)) {
+				result.add(new Constraint(false, var, e));
+			}
+		}
+		return result.isEmpty() ? null : result.toArray(new Constraint[0]);
+	}
+
+	/**
+	 * Visits an operation whose solutions are not (or not only) the ones the filters in scope apply to, e.g. because
+	 * they are limited, grouped or only used to remove other solutions.
+	 */
+	private void visitWithoutFilters(Op op) {
+		List<Expr> saved = new ArrayList<>(filtersInScope);
+		filtersInScope.clear();
+		visitInNewScope(op);
+		filtersInScope.addAll(saved);
+	}
+
+	/**
+	 * Collects the filter expressions that can be checked on a single node, i.e. comparisons of one variable with
+	 * constants, which are pushed down to the patterns binding the variable.
+	 */
+	private static void collectPushable(Expr e, List<Expr> pushable) {
+		if (e instanceof E_LogicalAnd) {
+			collectPushable(((E_LogicalAnd) e).getArg1(), pushable);
+			collectPushable(((E_LogicalAnd) e).getArg2(), pushable);
+			return;
+		}
+		if (!(e instanceof E_Equals || e instanceof E_LessThan || e instanceof E_LessThanOrEqual
+				|| e instanceof E_GreaterThan || e instanceof E_GreaterThanOrEqual || e instanceof E_OneOf
+				|| e instanceof E_StrStartsWith || e instanceof E_StrEndsWith || e instanceof E_StrContains
+				|| e instanceof E_Regex)) {
+			return;
+		}
+		if (ExprVars.getVarsMentioned(e).size() != 1) {
+			return;
+		}
+		for (Expr arg : ((ExprFunction) e).getArgs()) {
+			boolean ok = arg.isVariable() || arg.isConstant() || (arg instanceof E_Str && ((E_Str) arg).getArg().isVariable());
+			if (!ok) {
+				return;
+			}
+		}
+		pushable.add(e);
+	}
+
 	@Override
 	public void visit(OpBGP opBGP) {
 		log.trace(" - OpBGP - ", opBGP);
 		log.trace("{}:", opBGP.getPattern().getList().toString());
-		opComponents.addAll(opBGP.getPattern().getList());
+		opBGP.getPattern().getList().forEach(t -> addScopedComponent(t, t));
 	}
 
 	@Override
 	public void visit(OpQuadPattern opQuadPattern) {
 		log.trace(" - OpQuadPattern - ", opQuadPattern);
-		opComponents.addAll(opQuadPattern.getPattern().getList());
+		opQuadPattern.getPattern().getList().forEach(q -> addScopedComponent(q, q.asTriple()));
 	}
 
 	@Override
 	public void visit(OpQuadBlock opQuadBlock) {
 		log.trace(" - OpQuadBlock - ", opQuadBlock);
-		opComponents.addAll(opQuadBlock.getPattern().getList());
+		opQuadBlock.getPattern().getList().forEach(q -> addScopedComponent(q, q.asTriple()));
 	}
 
 	@Override
 	public void visit(OpTriple opTriple) {
 		log.trace(" - OpBGP - ", opTriple);
-		opComponents.add(opTriple.getTriple());
+		addComponent(opTriple.getTriple());
 	}
 
 	@Override
 	public void visit(OpQuad opQuad) {
 		log.trace(" - OpQuad - ", opQuad);
-		opComponents.add(opQuad.getQuad());
+		addComponent(opQuad.getQuad());
 	}
 
 	@Override
@@ -158,7 +297,7 @@ public class OpComponentsAnalyser implements OpVisitor {
 
 			@Override
 			public void visit(P_Link pathNode) {
-				opComponents.add(new Triple(Node.ANY, pathNode.getNode(), Node.ANY));
+				addComponent(new Triple(Node.ANY, pathNode.getNode(), Node.ANY));
 
 			}
 		});
@@ -177,13 +316,13 @@ public class OpComponentsAnalyser implements OpVisitor {
 
 	@Override
 	public void visit(OpProcedure opProcedure) {
-		opProcedure.getSubOp().visit(this);
+		visitWithoutFilters(opProcedure.getSubOp());
 	}
 
 	@Override
 	public void visit(OpPropFunc opPropFunc) {
-		opComponents.add(opPropFunc);
-		opPropFunc.getSubOp().visit(this);
+		addComponent(opPropFunc);
+		visitWithoutFilters(opPropFunc.getSubOp());
 	}
 
 	@Override
@@ -193,7 +332,10 @@ public class OpComponentsAnalyser implements OpVisitor {
 			log.trace("Exp - {} - {}", e.toString(), e.getClass().toString());
 			extractFromExpression(e);
 		});
+		int mark = filtersInScope.size();
+		opFilter.getExprs().getList().forEach(e -> collectPushable(e, filtersInScope));
 		opFilter.getSubOp().visit(this);
+		filtersInScope.subList(mark, filtersInScope.size()).clear();
 
 	}
 
@@ -224,21 +366,21 @@ public class OpComponentsAnalyser implements OpVisitor {
 			public void visit(NodeValue nv) {
 				log.trace("Expr - NodeValue");
 				if (nv.getNode().isURI()) {
-					opComponents.add(new Triple(Node.ANY, nv.getNode(), Node.ANY));
+					addComponent(new Triple(Node.ANY, nv.getNode(), Node.ANY));
 				}
 			}
 
 			@Override
 			public void visit(ExprTripleTerm tripleTerm) {
 				log.trace("Expr - tripleTerm");
-				opComponents.add(tripleTerm.getTriple());
+				addComponent(tripleTerm.getTriple());
 			}
 
 			@Override
 			public void visit(ExprFunctionOp funcOp) {
 				log.trace("Expr - funcOp");
 				if (funcOp.isGraphPattern()) {
-					funcOp.getGraphPattern().visit(oca);
+					oca.visitWithoutFilters(funcOp.getGraphPattern());
 				}
 				funcOp.getArgs().forEach(e -> {
 					log.trace("Arg - {}", e.getClass().toString());
@@ -251,7 +393,7 @@ public class OpComponentsAnalyser implements OpVisitor {
 			public void visit(ExprFunctionN func) {
 				log.trace("Expr - funcOp - N");
 				if (func.isGraphPattern()) {
-					func.getGraphPattern().visit(oca);
+					oca.visitWithoutFilters(func.getGraphPattern());
 				}
 				func.getArgs().forEach(e -> {
 					e.visit(this);
@@ -262,7 +404,7 @@ public class OpComponentsAnalyser implements OpVisitor {
 			public void visit(ExprFunction3 func) {
 				log.trace("Expr - funcOp - 3");
 				if (func.isGraphPattern()) {
-					func.getGraphPattern().visit(oca);
+					oca.visitWithoutFilters(func.getGraphPattern());
 				}
 				func.getArgs().forEach(e -> {
 					e.visit(this);
@@ -273,7 +415,7 @@ public class OpComponentsAnalyser implements OpVisitor {
 			public void visit(ExprFunction2 func) {
 				log.trace("Expr - funcOp - 2");
 				if (func.isGraphPattern()) {
-					func.getGraphPattern().visit(oca);
+					oca.visitWithoutFilters(func.getGraphPattern());
 				}
 				func.getArgs().forEach(e -> {
 					e.visit(this);
@@ -285,7 +427,7 @@ public class OpComponentsAnalyser implements OpVisitor {
 			public void visit(ExprFunction1 func) {
 				log.trace("Expr - funcOp - 1");
 				if (func.isGraphPattern()) {
-					func.getGraphPattern().visit(oca);
+					oca.visitWithoutFilters(func.getGraphPattern());
 				}
 				func.getArgs().forEach(e -> {
 					e.visit(this);
@@ -296,7 +438,7 @@ public class OpComponentsAnalyser implements OpVisitor {
 			public void visit(ExprFunction0 func) {
 				log.trace("Expr - funcOp - 0");
 				if (func.isGraphPattern()) {
-					func.getGraphPattern().visit(oca);
+					oca.visitWithoutFilters(func.getGraphPattern());
 				}
 				func.getArgs().forEach(e -> {
 					e.visit(this);
@@ -315,7 +457,7 @@ public class OpComponentsAnalyser implements OpVisitor {
 
 	@Override
 	public void visit(OpService opService) {
-		opService.getSubOp().visit(this);
+		visitWithoutFilters(opService.getSubOp());
 	}
 
 	@Override
@@ -347,37 +489,37 @@ public class OpComponentsAnalyser implements OpVisitor {
 	@Override
 	public void visit(OpLeftJoin opLeftJoin) {
 		opLeftJoin.getLeft().visit(this);
-		opLeftJoin.getRight().visit(this);
+		visitInNewScope(opLeftJoin.getRight());
 	}
 
 	@Override
 	public void visit(OpUnion opUnion) {
-		opUnion.getLeft().visit(this);
-		opUnion.getRight().visit(this);
+		visitInNewScope(opUnion.getLeft());
+		visitInNewScope(opUnion.getRight());
 	}
 
 	@Override
 	public void visit(OpDiff opDiff) {
 		opDiff.getLeft().visit(this);
-		opDiff.getRight().visit(this);
+		visitWithoutFilters(opDiff.getRight());
 	}
 
 	@Override
 	public void visit(OpMinus opMinus) {
 		opMinus.getLeft().visit(this);
-		opMinus.getRight().visit(this);
+		visitWithoutFilters(opMinus.getRight());
 	}
 
 	@Override
 	public void visit(OpLateral opLateral) {
 		opLateral.getLeft().visit(this);
-		opLateral.getRight().visit(this);
+		visitWithoutFilters(opLateral.getRight());
 	}
 
 	@Override
 	public void visit(OpConditional opConditional) {
 		opConditional.getLeft().visit(this);
-		opConditional.getRight().visit(this);
+		visitInNewScope(opConditional.getRight());
 	}
 
 	@Override
@@ -390,7 +532,7 @@ public class OpComponentsAnalyser implements OpVisitor {
 	@Override
 	public void visit(OpDisjunction opDisjunction) {
 		for (Op o : opDisjunction.getElements()) {
-			o.visit(this);
+			visitInNewScope(o);
 		}
 	}
 
@@ -406,7 +548,12 @@ public class OpComponentsAnalyser implements OpVisitor {
 
 	@Override
 	public void visit(OpProject opProject) {
-		opProject.getSubOp().visit(this);
+		// Variables that are not projected are not the ones the filters refer to
+		List<Expr> saved = new ArrayList<>(filtersInScope);
+		filtersInScope.removeIf(e -> !opProject.getVars().containsAll(ExprVars.getVarsMentioned(e)));
+		visitInNewScope(opProject.getSubOp());
+		filtersInScope.clear();
+		filtersInScope.addAll(saved);
 	}
 
 	@Override
@@ -421,51 +568,271 @@ public class OpComponentsAnalyser implements OpVisitor {
 
 	@Override
 	public void visit(OpSlice opSlice) {
-		opSlice.getSubOp().visit(this);
+		visitWithoutFilters(opSlice.getSubOp());
 	}
 
 	@Override
 	public void visit(OpGroup opGroup) {
-		opGroup.getSubOp().visit(this);
+		visitWithoutFilters(opGroup.getSubOp());
 	}
 
 	@Override
 	public void visit(OpTopN opTopN) {
-		opTopN.getSubOp().visit(this);
+		visitWithoutFilters(opTopN.getSubOp());
 	}
 
 	public boolean match(Node graph, Node subject, Node predicate, Node object) {
-		if (opComponents.isEmpty())
+		Index index = index();
+		if (index.matchAll) {
+			return true;
+		}
+		List<Pattern> patterns = index.byPredicate.get(predicate);
+		if (patterns != null && matchAny(patterns, graph, subject, object)) {
+			return true;
+		}
+		if (!index.anySlot.isEmpty() && predicate.isURI() && predicate.getURI().startsWith(RDF_SLOT_PREFIX) && matchAny(index.anySlot, graph, subject, object)) {
 			return true;
+		}
+		return matchAny(index.anyPredicate, graph, subject, object);
+	}
 
-		for (Object o : opComponents) {
-			if (o instanceof Quad) {
-				Quad q = (Quad) o;
-				if (matchQuad(q, graph, subject, predicate, object)) {
-					return true;
-				}
-			} else if (o instanceof Triple) {
-				Triple t = (Triple) o;
-				if ((!t.getSubject().isConcrete() || t.getSubject().matches(subject))
-						&& predicateMatch(t.getPredicate(), predicate) // (!t.getPredicate().isConcrete() ||
-						// t.getPredicate().matches(predicate))
-						&& (!t.getObject().isConcrete() || t.getObject().matches(object))) {
-					return true;
+	private static boolean matchAny(List<Pattern> patterns, Node graph, Node subject, Node object) {
+		for (Pattern p : patterns) {
+			if (p.matches(graph, subject, object)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * The components are compiled, the first time they are matched, into graph/subject/object patterns dispatched by
+	 * predicate, so that {@link #match(Node, Node, Node, Node)} only checks the patterns that can match the predicate
+	 * of a quad. The index is rebuilt if components are added afterwards.
+	 */
+	private Index index() {
+		Index current = index;
+		if (current == null || current.size != opComponents.size()) {
+			current = new Index(asPatterns(opComponents), constraints);
+			index = current;
+		}
+		return current;
+	}
+
+	private static final class Index {
+		private final int size;
+		private final Map<Node, List<Pattern>> byPredicate = new HashMap<>();
+		private final List<Pattern> anySlot = new ArrayList<>();
+		private final List<Pattern> anyPredicate = new ArrayList<>();
+		private final boolean matchAll;
+
+		private Index(List<Node[]> patterns, List<Constraint[]> constraints) {
+			size = patterns.size();
+			boolean all = patterns.isEmpty();
+			for (int i = 0; i < patterns.size(); i++) {
+				Node[] p = patterns.get(i);
+				Pattern pattern = new Pattern(p[0], p[1], p[3], constraints.get(i));
+				Node predicate = p[2];
+				if (!predicate.isConcrete()) {
+					anyPredicate.add(pattern);
+					all = all || pattern.matchesAll();
+				} else if (isAnySlot(predicate)) {
+					anySlot.add(pattern);
+				} else {
+					byPredicate.computeIfAbsent(predicate, k -> new ArrayList<>()).add(pattern);
 				}
-			} else if (o instanceof OpPropFunc) {
-				OpPropFunc op = (OpPropFunc) o;
-				if ((!op.getSubjectArgs().getArg().isConcrete() || op.getSubjectArgs().getArg().matches(subject))
-						&& predicateMatch(op.getProperty(), predicate) // (!t.getPredicate().isConcrete() ||
-						// t.getPredicate().matches(predicate))
-						&& (!op.getObjectArgs().getArg().isConcrete() || op.getObjectArgs().getArg().matches(object))) {
-					return true;
+			}
+			matchAll = all;
+		}
+	}
+
+	private static final class Pattern {
+		private final Node graph, subject, object;
+		private final Constraint[] constraints;
+
+		private Pattern(Node graph, Node subject, Node object, Constraint[] constraints) {
+			this.graph = graph;
+			this.subject = subject;
+			this.object = object;
+			this.constraints = constraints;
+		}
+
+		private boolean matchesAll() {
+			return !graph.isConcrete() && !subject.isConcrete() && !object.isConcrete() && constraints == null;
+		}
+
+		private boolean matches(Node g, Node s, Node o) {
+			if ((graph.isConcrete() && !graph.matches(g)) || (subject.isConcrete() && !subject.matches(s)) || (object.isConcrete() && !object.matches(o))) {
+				return false;
+			}
+			if (constraints != null) {
+				for (Constraint c : constraints) {
+					if (!c.test(c.onSubject ? s : o)) {
+						return false;
+					}
 				}
+			}
+			return true;
+		}
+	}
+
+	/**
+	 * A filter expression on the subject or the object of a pattern.
+	 */
+	private static final class Constraint {
+		private static final FunctionEnv env = new FunctionEnvBase();
+		private final boolean onSubject;
+		private final Var var;
+		private final Expr expr;
 
+		private Constraint(boolean onSubject, Var var, Expr expr) {
+			this.onSubject = onSubject;
+			this.var = var;
+			this.expr = expr;
+		}
+
+		private boolean test(Node node) {
+			// Expressions that cannot be evaluated (e.g. comparing a string with a number) are false
+			return expr.isSatisfied(BindingFactory.binding(var, node), env);
+		}
+	}
+
+	/**
+	 * Checks whether any triple about the container reached from the root with the given path, or about the containers
+	 * nested in it, can match the components. Only the patterns connected to a variable of type fx:root by a chain of
+	 * patterns in the same scope (e.g. ?root a fx:root ; xyz:a ?a . ?a xyz:b ?b) have known paths: if any component
+	 * is not such a pattern, every container is needed.
+	 *
+	 * @param path the predicates linking the root to the container
+	 * @return false if the container and its content can be skipped
+	 */
+	public boolean isNeeded(List<Node> path) {
+		List<List<Node>> subjectPaths = knownPaths();
+		if (subjectPaths == null) {
+			return true;
+		}
+		for (List<Node> subjectPath : subjectPaths) {
+			if (isPrefix(path, subjectPath)) {
+				return true;
 			}
 		}
 		return false;
 	}
 
+	/**
+	 * @return the paths from the root of the subjects of all the patterns, or null if some are unknown
+	 */
+	private List<List<Node>> knownPaths() {
+		Paths current = paths;
+		if (current == null || current.size != opComponents.size()) {
+			current = new Paths(opComponents.size(), unscoped || opComponents.isEmpty() ? null : subjectPaths());
+			paths = current;
+		}
+		return current.subjectPaths;
+	}
+
+	/**
+	 * Checks whether every container needed by the other analyser is also needed by this analyser, i.e. whether the
+	 * containers skipped with this analyser (see {@link #isNeeded(List)}) are skipped with the other one too.
+	 */
+	private boolean pathsCover(OpComponentsAnalyser other) {
+		List<List<Node>> mine = knownPaths();
+		if (mine == null) {
+			return true;
+		}
+		List<List<Node>> others = other.knownPaths();
+		if (others == null) {
+			return false;
+		}
+		for (List<Node> q : others) {
+			boolean covered = false;
+			for (List<Node> p : mine) {
+				if (p.size() >= q.size() && pathCovers(p, q)) {
+					covered = true;
+					break;
+				}
+			}
+			if (!covered) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private boolean pathCovers(List<Node> general, List<Node> specific) {
+		for (int i = 0; i < specific.size(); i++) {
+			if (!predicateCovers(general.get(i), specific.get(i))) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static final class Paths {
+		private final int size;
+		private final List<List<Node>> subjectPaths;
+
+		private Paths(int size, List<List<Node>> subjectPaths) {
+			this.size = size;
+			this.subjectPaths = subjectPaths;
+		}
+	}
+
+	/**
+	 * @return the paths from the root of the subjects of all the patterns, or null if some are unknown
+	 */
+	private List<List<Node>> subjectPaths() {
+		List<List<Node>> result = new ArrayList<>();
+		for (List<Triple> triples : scopes) {
+			Map<Node, Set<List<Node>>> varPaths = new HashMap<>();
+			for (Triple t : triples) {
+				if (t.getSubject().isVariable() && t.getPredicate().equals(RDF.type.asNode()) && t.getObject().isURI() && t.getObject().getURI().equals(Triplifier.FACADE_X_TYPE_ROOT)) {
+					varPaths.computeIfAbsent(t.getSubject(), k -> new HashSet<>()).add(Collections.emptyList());
+				}
+			}
+			// Follow the chains of patterns; at most one more step per round, so cycles are detected
+			boolean changed = true;
+			for (int round = 0; changed; round++) {
+				if (round > triples.size()) {
+					return null;
+				}
+				changed = false;
+				for (Triple t : triples) {
+					Set<List<Node>> from = varPaths.get(t.getSubject());
+					if (from == null || !t.getObject().isVariable() || t.getObject().equals(t.getSubject())) {
+						continue;
+					}
+					Set<List<Node>> to = varPaths.computeIfAbsent(t.getObject(), k -> new HashSet<>());
+					for (List<Node> p : new ArrayList<>(from)) {
+						List<Node> extended = new ArrayList<>(p);
+						extended.add(t.getPredicate());
+						changed |= to.add(extended);
+					}
+				}
+			}
+			for (Triple t : triples) {
+				Set<List<Node>> subjectPaths = varPaths.get(t.getSubject());
+				if (subjectPaths == null) {
+					return null;
+				}
+				result.addAll(subjectPaths);
+			}
+		}
+		return result;
+	}
+
+	private boolean isPrefix(List<Node> path, List<Node> subjectPath) {
+		if (path.size() > subjectPath.size()) {
+			return false;
+		}
+		for (int i = 0; i < path.size(); i++) {
+			if (!predicateMatch(subjectPath.get(i), path.get(i))) {
+				return false;
+			}
+		}
+		return true;
+	}
+
 	protected boolean matchQuad(Quad q, Node graph, Node subject, Node predicate, Node object) {
 		if ((!q.getGraph().isConcrete() || q.getGraph().matches(graph) || q.getGraph().matches(unionGraph))
 				&& (!q.getSubject().isConcrete() || q.getSubject().matches(subject))
@@ -477,11 +844,99 @@ public class OpComponentsAnalyser implements OpVisitor {
 		return false;
 	}
 
+	/**
+	 * Checks whether every triple matched by the other analyser is also matched by this analyser, i.e. whether a graph
+	 * filtered with this analyser contains all the triples that would be kept by the other one. The containers that
+	 * the triplifiers skip with this analyser must be skipped with the other one as well.
+	 *
+	 * @param other the analyser of another operation
+	 * @return true if this analyser generalises the other one
+	 */
+	public boolean covers(OpComponentsAnalyser other) {
+		if (opComponents.isEmpty()) {
+			return true;
+		}
+		if (!pathsCover(other)) {
+			return false;
+		}
+		List<Node[]> mine = asPatterns(opComponents);
+		// Patterns restricted by filters only cover patterns with the same filters, which are not compared
+		for (int i = mine.size() - 1; i >= 0; i--) {
+			if (constraints.get(i) != null) {
+				mine.remove(i);
+			}
+		}
+		List<Node[]> others = asPatterns(other.opComponents);
+		for (Node[] p : mine) {
+			if (!p[0].isConcrete() && !p[1].isConcrete() && !p[2].isConcrete() && !p[3].isConcrete()) {
+				return true;
+			}
+		}
+		if (others.isEmpty()) {
+			// The other analyser matches everything
+			return false;
+		}
+		for (Node[] q : others) {
+			boolean covered = false;
+			for (Node[] p : mine) {
+				if (nodeCovers(p[0], q[0]) && nodeCovers(p[1], q[1]) && predicateCovers(p[2], q[2]) && nodeCovers(p[3], q[3])) {
+					covered = true;
+					break;
+				}
+			}
+			if (!covered) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static List<Node[]> asPatterns(List<Object> components) {
+		List<Node[]> patterns = new ArrayList<>();
+		for (Object o : components) {
+			if (o instanceof Quad) {
+				Quad q = (Quad) o;
+				Node g = q.getGraph().matches(unionGraph) ? Node.ANY : q.getGraph();
+				patterns.add(new Node[]{g, q.getSubject(), q.getPredicate(), q.getObject()});
+			} else if (o instanceof Triple) {
+				Triple t = (Triple) o;
+				patterns.add(new Node[]{Node.ANY, t.getSubject(), t.getPredicate(), t.getObject()});
+			} else if (o instanceof OpPropFunc) {
+				OpPropFunc op = (OpPropFunc) o;
+				Node s = op.getSubjectArgs().isNode() ? op.getSubjectArgs().getArg() : Node.ANY;
+				Node obj = op.getObjectArgs().isNode() ? op.getObjectArgs().getArg() : Node.ANY;
+				patterns.add(new Node[]{Node.ANY, s, op.getProperty(), obj});
+			}
+		}
+		return patterns;
+	}
+
+	private static boolean nodeCovers(Node general, Node specific) {
+		return !general.isConcrete() || general.equals(specific);
+	}
+
+	private boolean predicateCovers(Node general, Node specific) {
+		if (!general.isConcrete()) {
+			return true;
+		}
+		if (!specific.isConcrete()) {
+			return false;
+		}
+		if (isAnySlot(general)) {
+			return isAnySlot(specific) || (specific.isURI() && specific.getURI().startsWith(RDF_SLOT_PREFIX));
+		}
+		return general.equals(specific);
+	}
+
+	private static boolean isAnySlot(Node predicate) {
+		return predicate.isURI() && predicate.getURI().equals(Triplifier.FACADE_X_CONST_NAMESPACE_IRI + "anySlot");
+	}
+
 	private boolean predicateMatch(Node queryPredicate, Node dataPredicate) {
 		// If queryPredicate is fx:anySLot match any container membership property
 		if (queryPredicate.isConcrete()
 				&& queryPredicate.getURI().equals(Triplifier.FACADE_X_CONST_NAMESPACE_IRI + "anySlot")) {
-			if (dataPredicate.getURI().startsWith("http://www.w3.org/1999/02/22-rdf-syntax-ns#_")) {
+			if (dataPredicate.getURI().startsWith(RDF_SLOT_PREFIX)) {
 				return true;
 			} else {
 				return false;
@@ -0,0 +1,146 @@
+/*
+ * Copyright (c) 2023 SPARQL Anything Contributors @ http://github.com/sparql-anything
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.sparqlanything.model;
+
+import org.apache.jena.sparql.core.Quad;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A bounded ring buffer of quads between one producer and one consumer thread, without locks: each side only writes
+ * its own position, which the other side reads. A side that has to wait (the producer when the buffer is full, the
+ * consumer when it is empty) spins for a while, then parks for increasing times.
+ */
+final class QuadRingBuffer {
+
+	private static final int SPINS = 100;
+	private static final long MAX_PARK_NANOS = 1_000_000;
+
+	private final Quad[] buffer;
+	private final int mask;
+	// The position of the next quad to take, written by the consumer
+	private final AtomicLong head = new AtomicLong();
+	// The position of the next quad to put, written by the producer
+	private final AtomicLong tail = new AtomicLong();
+	// The positions of the other side last read by each side
+	private long producerHead = 0;
+	private long consumerTail = 0;
+	private final Thread producer;
+	private volatile boolean closed = false;
+	private volatile Throwable failure = null;
+
+	/**
+	 * @param capacity a power of two
+	 * @param producer the thread putting the quads, the consumer stops waiting for quads when it is terminated
+	 */
+	QuadRingBuffer(int capacity, Thread producer) {
+		if (Integer.bitCount(capacity) != 1) {
+			throw new IllegalArgumentException("The capacity must be a power of two: " + capacity);
+		}
+		this.buffer = new Quad[capacity];
+		this.mask = capacity - 1;
+		this.producer = producer;
+	}
+
+	/**
+	 * Puts a quad, waiting while the buffer is full. Called by the producer.
+	 *
+	 * @throws IllegalStateException if the consumer failed
+	 */
+	void put(Quad quad) {
+		long t = tail.get();
+		int waits = 0;
+		while (t - producerHead >= buffer.length) {
+			producerHead = head.get();
+			if (t - producerHead >= buffer.length) {
+				checkFailure();
+				waits = backOff(waits);
+			}
+		}
+		buffer[(int) t & mask] = quad;
+		tail.lazySet(t + 1);
+	}
+
+	/**
+	 * Takes the available quads, up to the length of the batch, waiting until there is at least one. Called by the
+	 * consumer.
+	 *
+	 * @return the number of quads taken, or -1 if the buffer is closed and empty, its producer is terminated, or it
+	 * failed
+	 */
+	int take(Quad[] batch) {
+		if (failure != null) {
+			return -1;
+		}
+		long h = head.get();
+		int waits = 0;
+		while (consumerTail == h) {
+			// The tail is read again after the buffer is found closed, as it may have been moved just before
+			boolean done = closed || !producer.isAlive();
+			consumerTail = tail.get();
+			if (consumerTail == h) {
+				if (done) {
+					return -1;
+				}
+				waits = backOff(waits);
+			}
+		}
+		int n = (int) Math.min(consumerTail - h, batch.length);
+		for (int i = 0; i < n; i++) {
+			int at = (int) (h + i) & mask;
+			batch[i] = buffer[at];
+			buffer[at] = null;
+		}
+		head.lazySet(h + n);
+		return n;
+	}
+
+	/**
+	 * Called by the producer once all the quads are put.
+	 */
+	void close() {
+		closed = true;
+	}
+
+	boolean isClosed() {
+		return closed;
+	}
+
+	/**
+	 * Called when the quads cannot be taken anymore, so that neither side waits for the other.
+	 */
+	void fail(Throwable e) {
+		failure = e;
+	}
+
+	void checkFailure() {
+		Throwable e = failure;
+		if (e != null) {
+			throw new IllegalStateException("The quads could not be added to the graph", e);
+		}
+	}
+
+	private static int backOff(int waits) {
+		if (waits < SPINS) {
+			Thread.onSpinWait();
+		} else {
+			LockSupport.parkNanos(Math.min(1000L << Math.min(waits - SPINS, 10), MAX_PARK_NANOS));
+		}
+		return waits + 1;
+	}
+}
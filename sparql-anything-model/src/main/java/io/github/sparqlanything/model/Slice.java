@@ -20,4 +20,12 @@ public interface Slice<T> {
 	T get();
 	int iteration();
 	String getDatasourceId();
+
+	/**
+	 * @return true if the slice does not depend on the state of the slicer (e.g. a shared parser), so that it can be
+	 * triplified concurrently with the other slices of the same resource
+	 */
+	default boolean isIndependent() {
+		return false;
+	}
 }
@@ -21,6 +21,10 @@ import java.util.Properties;
 
 public interface Slicer {
 
+	/**
+	 * @return the slices of the resource. The iterator can implement {@link org.apache.jena.atlas.iterator.IteratorCloseable} to release the
+	 * resource when the slices are not read to the end (e.g. because of a LIMIT).
+	 */
 	Iterable<Slice> slice(Properties p) throws IOException, TriplifierHTTPException;
 
 	void triplify(Slice slice, Properties p, FacadeXGraphBuilder builder);
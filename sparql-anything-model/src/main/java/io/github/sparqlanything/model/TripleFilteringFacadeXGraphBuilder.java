@@ -17,11 +17,15 @@
 package io.github.sparqlanything.model;
 
 import org.apache.jena.graph.Node;
+import org.apache.jena.graph.NodeFactory;
 import org.apache.jena.sparql.algebra.Op;
 import org.apache.jena.sparql.core.DatasetGraph;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Properties;
 
 /**
@@ -35,8 +39,7 @@ public class TripleFilteringFacadeXGraphBuilder extends BaseFacadeXGraphBuilder
 	public TripleFilteringFacadeXGraphBuilder(String resourceId, Op op, DatasetGraph ds, Properties properties) {
 		super(properties);
 		this.op = op;
-		analyser = new OpComponentsAnalyser();
-		op.visit(analyser);
+		analyser = OpComponentsAnalyser.of(op);
 	}
 
 	public Op getOp(){
@@ -56,4 +59,19 @@ public class TripleFilteringFacadeXGraphBuilder extends BaseFacadeXGraphBuilder
 		}
 		return false;
 	}
+
+	@Override
+	public boolean isNeeded(String dataSourceId, List<Object> path) {
+		List<Node> predicates = new ArrayList<>(path.size());
+		for (Object key : path) {
+			if (key instanceof Integer) {
+				predicates.add(slot2predicate((Integer) key));
+			} else if (key instanceof URI) {
+				predicates.add(NodeFactory.createURI(key.toString()));
+			} else {
+				predicates.add(key2predicate(key.toString()));
+			}
+		}
+		return analyser.isNeeded(predicates);
+	}
 }
@@ -194,11 +194,19 @@ public interface Triplifier {
 
 				// If HTTP
 				if (url.getProtocol().equals("http") || url.getProtocol().equals("https")) {
+					if (LocalCache.isEnabled(properties) && properties.getProperty(HTTPHelper.HTTPMETHOD, "GET").equalsIgnoreCase("GET")) {
+						log.debug("Getting input stream via the local cache");
+						return LocalCache.fromProperties(properties).getInputStream(url, properties);
+					}
 					CloseableHttpResponse response = HTTPHelper.getInputStream(url, properties);
 					if (!HTTPHelper.isSuccessful(response)) {
 						log.trace("Request unsuccesful: {}", response.getStatusLine().toString());
-						log.trace("Response: {}", response);
-						log.trace("Response body: {}", IOUtils.toString(response.getEntity().getContent(), Charset.defaultCharset()));
+						if (log.isTraceEnabled()) {
+							log.trace("Response: {}", response);
+							log.trace("Response body: {}", IOUtils.toString(response.getEntity().getContent(), Charset.defaultCharset()));
+						}
+						// Release the connection
+						response.close();
 						throw new TriplifierHTTPException(response.getStatusLine().toString());
 					}
 					return response.getEntity().getContent();
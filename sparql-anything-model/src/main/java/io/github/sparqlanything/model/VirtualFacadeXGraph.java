@@ -0,0 +1,204 @@
+/*
+ * Copyright (c) 2023 SPARQL Anything Contributors @ http://github.com/sparql-anything
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.sparqlanything.model;
+
+import org.apache.jena.atlas.iterator.Iter;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.graph.impl.GraphBase;
+import org.apache.jena.sparql.core.DatasetGraph;
+import org.apache.jena.sparql.core.DatasetGraphFactory;
+import org.apache.jena.util.iterator.ExtendedIterator;
+import org.apache.jena.util.iterator.NullIterator;
+import org.apache.jena.util.iterator.WrappedIterator;
+import org.apache.jena.vocabulary.RDF;
+
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A read-only Facade-X graph whose triples are generated on demand from a parsed representation of a resource
+ * (e.g. the tree of a JSON document), instead of being materialised.
+ * <p>
+ * Containers are addressed by their ids, the keys of the nested containers joined with '/' starting from the root
+ * (e.g. "/store/book/_1"), as the triplifiers build them. A pattern with a concrete subject (or a concrete container as
+ * object) only visits the container it refers to, while other patterns walk the whole resource.
+ *
+ * @param <C> the type of the containers in the parsed representation
+ */
+public abstract class VirtualFacadeXGraph<C> extends GraphBase {
+
+	private static final Node FACADE_X_ROOT = NodeFactory.createURI(Triplifier.FACADE_X_TYPE_ROOT);
+
+	protected final BaseFacadeXBuilder nodes;
+	protected final String dataSourceId;
+	private final String rootURI;
+	private final Map<String, C> containers = new ConcurrentHashMap<>();
+
+	protected VirtualFacadeXGraph(Properties properties, String dataSourceId) {
+		// Only used to create nodes as the builders do
+		this.nodes = new BaseFacadeXBuilder(properties) {
+			@Override
+			public boolean add(Node graph, Node subject, Node predicate, Node object) {
+				throw new UnsupportedOperationException();
+			}
+		};
+		this.dataSourceId = dataSourceId;
+		this.rootURI = nodes.getRootURI(dataSourceId);
+	}
+
+	/**
+	 * @return the root container, which has no triples (other than its type) if the resource has no content
+	 */
+	protected abstract C getRoot();
+
+	/**
+	 * @return the container nested in the given one with the given key (the last segment of its id), or null
+	 */
+	protected abstract C getChild(C container, String key);
+
+	/**
+	 * @return the keys and the containers nested in the given one
+	 */
+	protected abstract Iterator<Map.Entry<String, C>> getChildren(C container);
+
+	/**
+	 * @return the triples having the given container as subject
+	 */
+	protected abstract Iterator<Triple> getTriples(String containerId, C container);
+
+	/**
+	 * @return a dataset having this graph as default graph and as graph of the data source
+	 */
+	public DatasetGraph asDatasetGraph() {
+		DatasetGraph dg = DatasetGraphFactory.createGeneral();
+		dg.addGraph(nodes.dataSourceId2node(dataSourceId), this);
+		dg.setDefaultGraph(this);
+		return dg;
+	}
+
+	@Override
+	protected ExtendedIterator<Triple> graphBaseFind(Triple triplePattern) {
+		Node subject = triplePattern.getSubject();
+		Node object = triplePattern.getObject();
+		Iterator<Triple> candidates;
+		if (subject.isConcrete()) {
+			String containerId = toContainerId(subject);
+			C container = containerId == null ? null : getContainer(containerId);
+			if (container == null) {
+				return NullIterator.instance();
+			}
+			candidates = triples(containerId, container);
+		} else if (object.isConcrete() && toContainerId(object) != null) {
+			// A container is the object of a single triple, in its parent
+			String containerId = toContainerId(object);
+			int slash = containerId.lastIndexOf('/');
+			if (slash < 0 || getContainer(containerId) == null) {
+				return NullIterator.instance();
+			}
+			String parentId = containerId.substring(0, slash);
+			candidates = triples(parentId, getContainer(parentId));
+		} else {
+			candidates = all();
+		}
+		return WrappedIterator.create(candidates).filterKeep(triplePattern::matches);
+	}
+
+	private String toContainerId(Node node) {
+		if (nodes.p_blank_nodes) {
+			return node.isBlank() ? node.getBlankNodeLabel() : null;
+		}
+		return node.isURI() && node.getURI().startsWith(rootURI) ? node.getURI().substring(rootURI.length()) : null;
+	}
+
+	private C getContainer(String containerId) {
+		if (containerId.equals(SPARQLAnythingConstants.ROOT_ID)) {
+			return getRoot();
+		}
+		C container = containers.get(containerId);
+		if (container == null) {
+			int slash = containerId.lastIndexOf('/');
+			if (slash < 0) {
+				return null;
+			}
+			C parent = getContainer(containerId.substring(0, slash));
+			if (parent == null) {
+				return null;
+			}
+			container = getChild(parent, containerId.substring(slash + 1));
+			if (container != null) {
+				containers.put(containerId, container);
+			}
+		}
+		return container;
+	}
+
+	private Iterator<Triple> triples(String containerId, C container) {
+		Iterator<Triple> triples = Iter.filter(getTriples(containerId, container), this::isKept);
+		if (containerId.equals(SPARQLAnythingConstants.ROOT_ID)) {
+			Triple type = Triple.create(nodes.container2node(SPARQLAnythingConstants.ROOT_ID, dataSourceId), RDF.type.asNode(), FACADE_X_ROOT);
+			triples = Iter.concat(Iter.singleton(type), triples);
+		}
+		return triples;
+	}
+
+	private boolean isKept(Triple triple) {
+		// As BaseFacadeXGraphBuilder#add
+		Node object = triple.getObject();
+		return nodes.p_null_string == null || !object.isLiteral() || !object.getLiteral().toString().equals(nodes.p_null_string);
+	}
+
+	private Iterator<Triple> all() {
+		Deque<Map.Entry<String, C>> stack = new ArrayDeque<>();
+		stack.push(Map.entry(SPARQLAnythingConstants.ROOT_ID, getRoot()));
+		return new Iterator<Triple>() {
+			private Iterator<Triple> current = Collections.emptyIterator();
+
+			@Override
+			public boolean hasNext() {
+				while (!current.hasNext()) {
+					if (stack.isEmpty()) {
+						return false;
+					}
+					Map.Entry<String, C> next = stack.pop();
+					Iterator<Map.Entry<String, C>> children = getChildren(next.getValue());
+					while (children.hasNext()) {
+						Map.Entry<String, C> child = children.next();
+						stack.push(Map.entry(next.getKey() + "/" + child.getKey(), child.getValue()));
+					}
+					current = triples(next.getKey(), next.getValue());
+				}
+				return true;
+			}
+
+			@Override
+			public Triple next() {
+				if (!hasNext()) {
+					throw new NoSuchElementException();
+				}
+				return current.next();
+			}
+		};
+	}
+}
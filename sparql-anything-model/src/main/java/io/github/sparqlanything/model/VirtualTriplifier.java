@@ -0,0 +1,34 @@
+/*
+ * Copyright (c) 2023 SPARQL Anything Contributors @ http://github.com/sparql-anything
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.sparqlanything.model;
+
+import org.apache.jena.sparql.core.DatasetGraph;
+
+import java.io.IOException;
+import java.util.Properties;
+
+/**
+ * A triplifier that can expose a resource as a {@link VirtualFacadeXGraph}, whose triples are generated on demand
+ * from a parsed representation of the resource instead of being added to a graph, see {@link IRIArgument#VIRTUAL}.
+ */
+public interface VirtualTriplifier {
+
+	/**
+	 * @return the dataset of the resource, or null if the options cannot be honoured without triplifying it
+	 */
+	DatasetGraph virtualDatasetGraph(Properties properties) throws IOException, TriplifierHTTPException;
+}
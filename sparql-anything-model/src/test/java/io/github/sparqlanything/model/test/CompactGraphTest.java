@@ -0,0 +1,105 @@
+/*
+ * Copyright (c) 2023 SPARQL Anything Contributors @ http://github.com/sparql-anything
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.sparqlanything.model.test;
+
+import io.github.sparqlanything.model.BaseFacadeXGraphBuilder;
+import io.github.sparqlanything.model.CompactGraph;
+import io.github.sparqlanything.model.IRIArgument;
+import org.apache.jena.datatypes.xsd.XSDDatatype;
+import org.apache.jena.graph.Graph;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.sparql.core.DatasetGraph;
+import org.apache.jena.sparql.graph.GraphFactory;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Properties;
+import java.util.Random;
+import java.util.Set;
+
+public class CompactGraphTest {
+
+	private static Node uri(String local) {
+		return NodeFactory.createURI("http://example.org/" + local);
+	}
+
+	private static Set<Triple> find(Graph g, Node s, Node p, Node o) {
+		return new HashSet<>(g.find(s, p, o).toList());
+	}
+
+	@Test
+	public void sameAsGraphMem() {
+		Graph expected = GraphFactory.createGraphMem();
+		CompactGraph actual = new CompactGraph();
+		Random random = new Random(42);
+		for (int i = 0; i < 2000; i++) {
+			Triple t = Triple.create(uri("s" + random.nextInt(100)), uri("p" + random.nextInt(10)), random.nextBoolean() ? uri("o" + random.nextInt(50)) : NodeFactory.createLiteral("v" + random.nextInt(50)));
+			expected.add(t);
+			actual.add(t);
+		}
+		for (int i = 0; i < 200; i++) {
+			Triple t = expected.find().next();
+			expected.delete(t);
+			actual.delete(t);
+		}
+		Assert.assertEquals(expected.size(), actual.size());
+		Assert.assertEquals(find(expected, Node.ANY, Node.ANY, Node.ANY), find(actual, Node.ANY, Node.ANY, Node.ANY));
+		Node[] subjects = {Node.ANY, uri("s1"), uri("s2"), uri("missing")};
+		Node[] predicates = {Node.ANY, uri("p1"), uri("p9")};
+		Node[] objects = {Node.ANY, uri("o3"), NodeFactory.createLiteral("v7")};
+		for (Node s : subjects) {
+			for (Node p : predicates) {
+				for (Node o : objects) {
+					Assert.assertEquals(find(expected, s, p, o), find(actual, s, p, o));
+					for (Triple t : find(expected, s, p, o)) {
+						Assert.assertTrue(actual.contains(t));
+					}
+				}
+			}
+		}
+	}
+
+	@Test
+	public void literalsByValue() {
+		CompactGraph g = new CompactGraph();
+		g.add(Triple.create(uri("s"), uri("p"), NodeFactory.createLiteral("1", XSDDatatype.XSDint)));
+		g.add(Triple.create(uri("s"), uri("p"), NodeFactory.createLiteral("1", XSDDatatype.XSDint)));
+		Assert.assertEquals(1, g.size());
+		Assert.assertTrue(g.contains(uri("s"), uri("p"), NodeFactory.createLiteral("01", XSDDatatype.XSDint)));
+		Assert.assertTrue(g.contains(uri("s"), uri("p"), NodeFactory.createLiteral("1", XSDDatatype.XSDinteger)));
+		Assert.assertFalse(g.contains(uri("s"), uri("p"), NodeFactory.createLiteral("1")));
+	}
+
+	@Test
+	public void builder() {
+		Properties properties = new Properties();
+		properties.setProperty(IRIArgument.LOCATION.toString(), "http://example.org/data.json");
+		properties.setProperty(IRIArgument.COMPACT.toString(), "true");
+		BaseFacadeXGraphBuilder builder = new BaseFacadeXGraphBuilder(properties);
+		builder.addRoot("");
+		builder.addValue("", "", "a", "x");
+		builder.addContainer("", "", "b", "/b");
+		builder.addValue("", "/b", 1, "y");
+		DatasetGraph dg = builder.getDatasetGraph();
+		Assert.assertTrue(dg.getDefaultGraph() instanceof CompactGraph);
+		Assert.assertEquals(4, dg.getDefaultGraph().size());
+		Assert.assertEquals(dg.getUnionGraph().size(), dg.getDefaultGraph().size());
+	}
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright (c) 2023 SPARQL Anything Contributors @ http://github.com/sparql-anything
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.sparqlanything.model.test;
+
+import io.github.sparqlanything.model.BaseFacadeXGraphBuilder;
+import io.github.sparqlanything.model.IRIArgument;
+import org.apache.jena.graph.Node;
+import org.apache.jena.rdf.model.ResourceFactory;
+import org.apache.jena.vocabulary.RDF;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Properties;
+
+public class FacadeXNodeBuilderTest {
+
+	private static BaseFacadeXGraphBuilder builder(boolean blankNodes) {
+		Properties properties = new Properties();
+		properties.setProperty(IRIArgument.LOCATION.toString(), "http://example.org/data.csv");
+		properties.setProperty(IRIArgument.BLANK_NODES.toString(), Boolean.toString(blankNodes));
+		return new BaseFacadeXGraphBuilder(properties);
+	}
+
+	@Test
+	public void literals() {
+		BaseFacadeXGraphBuilder builder = builder(true);
+		for (Object value : new Object[]{"a", "", " b ", 1, -7, 0.5, 1e300, Double.NaN, true, false, 3L, 2.5f}) {
+			Node expected = ResourceFactory.createTypedLiteral(value).asNode();
+			Node actual = builder.value2node(value);
+			Assert.assertEquals(expected, actual);
+			Assert.assertEquals(expected.hashCode(), actual.hashCode());
+			Assert.assertEquals(expected.getLiteralLexicalForm(), actual.getLiteralLexicalForm());
+			Assert.assertEquals(expected.getLiteralValue(), actual.getLiteralValue());
+		}
+	}
+
+	@Test
+	public void interning() {
+		for (boolean blankNodes : new boolean[]{true, false}) {
+			BaseFacadeXGraphBuilder builder = builder(blankNodes);
+			Assert.assertSame(builder.key2predicate("a key"), builder.key2predicate("a key"));
+			Assert.assertEquals("http://sparql.xyz/facade-x/data/a%20key", builder.key2predicate("a key").getURI());
+			Assert.assertSame(builder.slot2predicate(3), builder.slot2predicate(3));
+			Assert.assertEquals(RDF.li(3).asNode(), builder.slot2predicate(3));
+			Assert.assertEquals(RDF.li(100000).asNode(), builder.slot2predicate(100000));
+			Assert.assertSame(builder.dataSourceId2node(""), builder.dataSourceId2node(""));
+			Node row = builder.container2node("#row1", "");
+			Assert.assertSame(row, builder.container2node("#row1", ""));
+			Assert.assertEquals(blankNodes ? row.getBlankNodeLabel() : row.getURI(), blankNodes ? "#row1" : "http://example.org/data.csv##row1");
+			Assert.assertNotEquals(row, builder.container2node("#row2", ""));
+			Assert.assertEquals(blankNodes, row.equals(builder.container2node("#row1", "other")));
+		}
+	}
+}
@@ -16,15 +16,23 @@
 
 package io.github.sparqlanything.model.test;
 
+import com.sun.net.httpserver.HttpServer;
 import io.github.sparqlanything.model.HTTPHelper;
+import io.github.sparqlanything.model.IRIArgument;
+import io.github.sparqlanything.model.Triplifier;
+import io.github.sparqlanything.model.TriplifierHTTPException;
 import org.apache.http.impl.client.HttpClientBuilder;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
 
 import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.nio.charset.StandardCharsets;
 import java.util.Properties;
 
 public class HTTPHelperTest {
@@ -80,6 +88,59 @@ public class HTTPHelperTest {
         test();
     }
 
+    @Test
+    public void testPooledClients() throws MalformedURLException {
+        URL a = new URL("http://www.example.org/a");
+        URL b = new URL("http://www.example.org/b");
+        p.setProperty("http.client.setUserAgent", "SPARQL Anything");
+        p.setProperty("http.header.accept", "application/json");
+        Properties other = new Properties();
+        other.setProperty("http.client.setUserAgent", "SPARQL Anything");
+        Assert.assertSame(HTTPHelper.getClient(a, p), HTTPHelper.getClient(b, other));
+        other.setProperty("http.redirect", "false");
+        Assert.assertNotSame(HTTPHelper.getClient(a, p), HTTPHelper.getClient(a, other));
+        p.setProperty("http.pool", "false");
+        Assert.assertNotSame(HTTPHelper.getClient(a, p), HTTPHelper.getClient(a, p));
+    }
+
+    @Test
+    public void testPooledClientsWithCredentials() throws MalformedURLException {
+        // Credentials are given with each request, and not kept with the pooled clients
+        Properties other = new Properties();
+        p.setProperty("http.auth.user", "user");
+        p.setProperty("http.auth.password", "password");
+        Assert.assertSame(HTTPHelper.getClient(new URL("http://www.example.org/a"), p), HTTPHelper.getClient(new URL("http://www.example.org/b"), p));
+        Assert.assertSame(HTTPHelper.getClient(new URL("http://www.example.org/a"), p), HTTPHelper.getClient(new URL("http://www.example.com/a"), other));
+    }
+
+    @Test(timeout = 30000)
+    public void testErrorsReleasePooledConnections() throws IOException {
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/error", exchange -> {
+            byte[] body = "error".getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(500, body.length);
+            try (OutputStream os = exchange.getResponseBody()) {
+                os.write(body);
+            }
+        });
+        server.start();
+        try {
+            p.setProperty(IRIArgument.LOCATION.toString(), "http://127.0.0.1:" + server.getAddress().getPort() + "/error");
+            p.setProperty(HTTPHelper.HTTPCACHE, "false");
+            // More requests than connections per host
+            for (int i = 0; i <= HTTPHelper.POOL_MAX_PER_ROUTE; i++) {
+                try {
+                    Triplifier.getInputStream(p);
+                    Assert.fail();
+                } catch (TriplifierHTTPException e) {
+                    Assert.assertTrue(e.getMessage().contains("500"));
+                }
+            }
+        } finally {
+            server.stop(0);
+        }
+    }
+
     @Test
     public void testX() throws Exception {
         System.out.println(url.getProtocol());
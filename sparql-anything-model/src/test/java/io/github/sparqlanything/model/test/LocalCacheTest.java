@@ -0,0 +1,156 @@
+/*
+ * Copyright (c) 2023 SPARQL Anything Contributors @ http://github.com/sparql-anything
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.sparqlanything.model.test;
+
+import com.sun.net.httpserver.HttpServer;
+import io.github.sparqlanything.model.LocalCache;
+import io.github.sparqlanything.model.TriplifierHTTPException;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class LocalCacheTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private HttpServer server;
+	private final AtomicInteger downloads = new AtomicInteger();
+	private volatile String etag = "\"v1\"";
+	private volatile String content = "{\"a\":1}";
+
+	@Before
+	public void before() throws IOException {
+		server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		server.createContext("/data.json", exchange -> {
+			if (etag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+				exchange.sendResponseHeaders(304, -1);
+				exchange.close();
+				return;
+			}
+			downloads.incrementAndGet();
+			byte[] body = content.getBytes(StandardCharsets.UTF_8);
+			exchange.getResponseHeaders().add("ETag", etag);
+			exchange.sendResponseHeaders(200, body.length);
+			try (OutputStream os = exchange.getResponseBody()) {
+				os.write(body);
+			}
+		});
+		server.createContext("/private.json", exchange -> {
+			byte[] body = content.getBytes(StandardCharsets.UTF_8);
+			exchange.getResponseHeaders().add("Cache-Control", "no-store");
+			exchange.sendResponseHeaders(200, body.length);
+			try (OutputStream os = exchange.getResponseBody()) {
+				os.write(body);
+			}
+		});
+		server.createContext("/missing.json", exchange -> {
+			exchange.sendResponseHeaders(404, -1);
+			exchange.close();
+		});
+		server.start();
+	}
+
+	@After
+	public void after() {
+		server.stop(0);
+	}
+
+	private URL url(String path) throws IOException {
+		return new URL("http://127.0.0.1:" + server.getAddress().getPort() + path);
+	}
+
+	@Test
+	public void revalidate() throws IOException, TriplifierHTTPException {
+		LocalCache cache = new LocalCache(folder.getRoot(), LocalCache.DEFAULT_MAX_SIZE);
+		Properties p = new Properties();
+		File first = cache.download(url("/data.json"), p);
+		Assert.assertEquals("{\"a\":1}", FileUtils.readFileToString(first, StandardCharsets.UTF_8));
+		Assert.assertEquals(1, downloads.get());
+		Assert.assertEquals(first, cache.find(url("/data.json"), p));
+
+		// Not modified
+		File second = cache.download(url("/data.json"), p);
+		Assert.assertEquals(first, second);
+		Assert.assertEquals(1, downloads.get());
+
+		// Modified
+		etag = "\"v2\"";
+		content = "{\"a\":2}";
+		File third = cache.download(url("/data.json"), p);
+		Assert.assertEquals("{\"a\":2}", FileUtils.readFileToString(third, StandardCharsets.UTF_8));
+		Assert.assertEquals(2, downloads.get());
+	}
+
+	@Test
+	public void keyedByRelevantProperties() throws IOException, TriplifierHTTPException {
+		LocalCache cache = new LocalCache(folder.getRoot(), LocalCache.DEFAULT_MAX_SIZE);
+		Properties p = new Properties();
+		cache.download(url("/data.json"), p);
+		Properties withHeader = new Properties();
+		withHeader.setProperty("http.header.accept", "application/json");
+		Assert.assertNull(cache.find(url("/data.json"), withHeader));
+		cache.download(url("/data.json"), withHeader);
+		Assert.assertEquals(2, downloads.get());
+		Assert.assertTrue(cache.delete(url("/data.json"), p));
+		Assert.assertNull(cache.find(url("/data.json"), p));
+	}
+
+	@Test
+	public void evict() throws IOException, TriplifierHTTPException {
+		LocalCache cache = new LocalCache(folder.getRoot(), content.length());
+		Properties first = new Properties();
+		first.setProperty("http.query.q", "1");
+		Properties second = new Properties();
+		second.setProperty("http.query.q", "2");
+		cache.download(url("/data.json"), first);
+		cache.download(url("/data.json"), second);
+		Assert.assertNull(cache.find(url("/data.json"), first));
+		Assert.assertNotNull(cache.find(url("/data.json"), second));
+	}
+
+	@Test(expected = TriplifierHTTPException.class)
+	public void error() throws IOException, TriplifierHTTPException {
+		new LocalCache(folder.getRoot(), LocalCache.DEFAULT_MAX_SIZE).download(url("/missing.json"), new Properties());
+	}
+
+	@Test
+	public void noStore() throws IOException, TriplifierHTTPException {
+		LocalCache cache = new LocalCache(folder.getRoot(), LocalCache.DEFAULT_MAX_SIZE);
+		try (InputStream is = cache.getInputStream(url("/private.json"), new Properties())) {
+			Assert.assertEquals(content, new String(is.readAllBytes(), StandardCharsets.UTF_8));
+			// A temporary copy, while it is read
+			Assert.assertEquals(1, folder.getRoot().list().length);
+		}
+		Assert.assertNull(cache.find(url("/private.json"), new Properties()));
+		Assert.assertEquals(0, folder.getRoot().list().length);
+	}
+}
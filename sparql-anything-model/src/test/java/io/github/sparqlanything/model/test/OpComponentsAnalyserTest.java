@@ -0,0 +1,178 @@
+/*
+ * Copyright (c) 2023 SPARQL Anything Contributors @ http://github.com/sparql-anything
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.sparqlanything.model.test;
+
+import io.github.sparqlanything.model.OpComponentsAnalyser;
+import org.apache.jena.datatypes.xsd.XSDDatatype;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.query.QueryFactory;
+import org.apache.jena.sparql.algebra.Algebra;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+public class OpComponentsAnalyserTest {
+
+	private static OpComponentsAnalyser analyse(String where) {
+		OpComponentsAnalyser analyser = new OpComponentsAnalyser();
+		Algebra.compile(QueryFactory.create("PREFIX xyz: <http://sparql.xyz/facade-x/data/> PREFIX fx: <http://sparql.xyz/facade-x/ns/> SELECT * WHERE { " + where + " }")).visit(analyser);
+		return analyser;
+	}
+
+	@Test
+	public void coversNarrowerPatterns() {
+		Assert.assertTrue(analyse("?s ?p ?o").covers(analyse("?s xyz:name ?o")));
+		Assert.assertTrue(analyse("?s xyz:name ?o").covers(analyse("?s xyz:name 'Alice'")));
+		Assert.assertTrue(analyse("?s xyz:name ?o . ?s xyz:age ?a").covers(analyse("?s xyz:age ?a")));
+		Assert.assertTrue(analyse("?s fx:anySlot ?o").covers(analyse("?s <http://www.w3.org/1999/02/22-rdf-syntax-ns#_1> ?o")));
+	}
+
+	@Test
+	public void doesNotCoverWiderPatterns() {
+		Assert.assertFalse(analyse("?s xyz:name ?o").covers(analyse("?s ?p ?o")));
+		Assert.assertFalse(analyse("?s xyz:name 'Alice'").covers(analyse("?s xyz:name ?o")));
+		Assert.assertFalse(analyse("?s xyz:name ?o").covers(analyse("?s xyz:name ?o . ?s xyz:age ?a")));
+		Assert.assertFalse(analyse("?s fx:anySlot ?o").covers(analyse("?s xyz:name ?o")));
+	}
+
+	@Test
+	public void filters() {
+		Assert.assertTrue(analyse("?s xyz:name ?o . ?s ?p ?v FILTER(?p = xyz:age)").covers(analyse("?s xyz:age ?v")));
+		Assert.assertFalse(analyse("?s xyz:name ?o").covers(analyse("?s ?p ?v FILTER(?p = xyz:age)")));
+	}
+
+	@Test
+	public void coversPrunedContainers() {
+		// A graph without the containers the query cannot reach only covers queries reaching fewer containers
+		Assert.assertFalse(analyse("?root a fx:root ; xyz:a ?a . ?a xyz:b ?b").covers(analyse("?x xyz:b ?b")));
+		Assert.assertFalse(analyse("?root a fx:root ; xyz:a ?a . ?a xyz:b ?b").covers(analyse("?root a fx:root ; ?p ?a . ?a xyz:b ?b")));
+		Assert.assertTrue(analyse("?root a fx:root ; xyz:a ?a . ?a xyz:b ?b").covers(analyse("?root a fx:root ; xyz:a ?a . ?a xyz:b 1")));
+		Assert.assertTrue(analyse("?s ?p ?o").covers(analyse("?root a fx:root ; xyz:a ?a . ?a xyz:b ?b")));
+	}
+
+	@Test
+	public void sharedForEqualOperations() {
+		String query = "PREFIX xyz: <http://sparql.xyz/facade-x/data/> SELECT * WHERE { ?s xyz:name 'Alice' }";
+		OpComponentsAnalyser a = OpComponentsAnalyser.of(Algebra.compile(QueryFactory.create(query)));
+		Assert.assertSame(a, OpComponentsAnalyser.of(Algebra.compile(QueryFactory.create(query))));
+		Assert.assertNotSame(a, OpComponentsAnalyser.of(Algebra.compile(QueryFactory.create(query.replace("Alice", "Bob")))));
+		Assert.assertTrue(a.match(g, s, xyz("name"), NodeFactory.createLiteral("Alice")));
+		Assert.assertFalse(a.match(g, s, xyz("name"), NodeFactory.createLiteral("Bob")));
+	}
+
+	private static final Node g = NodeFactory.createURI("http://example.org/g");
+	private static final Node s = NodeFactory.createURI("http://example.org/s");
+
+	private static Node xyz(String local) {
+		return NodeFactory.createURI("http://sparql.xyz/facade-x/data/" + local);
+	}
+
+	@Test
+	public void match() {
+		OpComponentsAnalyser a = analyse("?s xyz:name 'Alice' . ?s fx:anySlot ?o . ?s xyz:age ?a");
+		Assert.assertTrue(a.match(g, s, xyz("name"), NodeFactory.createLiteral("Alice")));
+		Assert.assertFalse(a.match(g, s, xyz("name"), NodeFactory.createLiteral("Bob")));
+		Assert.assertTrue(a.match(g, s, xyz("age"), NodeFactory.createLiteral("42")));
+		Assert.assertTrue(a.match(g, s, NodeFactory.createURI("http://www.w3.org/1999/02/22-rdf-syntax-ns#_3"), s));
+		Assert.assertFalse(a.match(g, s, xyz("surname"), NodeFactory.createLiteral("Alice")));
+
+		Assert.assertTrue(analyse("?s ?p ?o").match(g, s, xyz("surname"), s));
+		Assert.assertTrue(analyse("").match(g, s, xyz("surname"), s));
+		OpComponentsAnalyser anyPredicate = analyse("?s ?p 'Alice'");
+		Assert.assertTrue(anyPredicate.match(g, s, xyz("surname"), NodeFactory.createLiteral("Alice")));
+		Assert.assertFalse(anyPredicate.match(g, s, xyz("surname"), NodeFactory.createLiteral("Bob")));
+
+		OpComponentsAnalyser graph = analyse("GRAPH <http://example.org/h> { ?s xyz:name ?o }");
+		Assert.assertTrue(graph.match(g, s, xyz("name"), s));
+	}
+
+	private static Node lit(String lexicalForm) {
+		return NodeFactory.createLiteral(lexicalForm);
+	}
+
+	private static Node integer(int i) {
+		return NodeFactory.createLiteral(Integer.toString(i), XSDDatatype.XSDinteger);
+	}
+
+	@Test
+	public void filterPushdown() {
+		OpComponentsAnalyser eq = analyse("?r xyz:country ?c . ?r xyz:name ?n FILTER(?c = 'IT')");
+		Assert.assertTrue(eq.match(g, s, xyz("country"), lit("IT")));
+		Assert.assertFalse(eq.match(g, s, xyz("country"), lit("FR")));
+		// Other patterns are not affected
+		Assert.assertTrue(eq.match(g, s, xyz("name"), lit("FR")));
+
+		OpComponentsAnalyser in = analyse("?r xyz:country ?c FILTER(?c IN ('IT', 'FR'))");
+		Assert.assertTrue(in.match(g, s, xyz("country"), lit("FR")));
+		Assert.assertFalse(in.match(g, s, xyz("country"), lit("DE")));
+
+		OpComponentsAnalyser range = analyse("?r xyz:age ?a FILTER(?a > 18 && ?a <= 65)");
+		Assert.assertTrue(range.match(g, s, xyz("age"), integer(30)));
+		Assert.assertFalse(range.match(g, s, xyz("age"), integer(70)));
+		Assert.assertFalse(range.match(g, s, xyz("age"), lit("thirty")));
+
+		OpComponentsAnalyser strings = analyse("?r xyz:name ?n FILTER(STRSTARTS(?n, 'Al') && REGEX(STR(?n), 'ce$', 'i'))");
+		Assert.assertTrue(strings.match(g, s, xyz("name"), lit("Alice")));
+		Assert.assertFalse(strings.match(g, s, xyz("name"), lit("Alan")));
+		Assert.assertFalse(strings.match(g, s, xyz("name"), lit("Bruce")));
+	}
+
+	@Test
+	public void filterNotPushed() {
+		// Disjunctions and expressions on more variables are not pushed down
+		Assert.assertTrue(analyse("?r xyz:country ?c FILTER(?c = 'IT' || ?c = 'FR')").match(g, s, xyz("country"), lit("DE")));
+		Assert.assertTrue(analyse("?r xyz:country ?c ; xyz:home ?h FILTER(?c = ?h)").match(g, s, xyz("country"), lit("DE")));
+		// The filter applies to the solutions of the subquery, not to the triples it is evaluated on
+		Assert.assertTrue(analyse("{ SELECT * { ?r xyz:country ?c } LIMIT 1 } FILTER(?c = 'IT')").match(g, s, xyz("country"), lit("DE")));
+		Assert.assertTrue(analyse("?r xyz:name ?n MINUS { ?r xyz:country ?c FILTER(?c = 'IT') } FILTER(?c = 'FR')").match(g, s, xyz("country"), lit("IT")));
+	}
+
+	@Test
+	public void filtersAndCovers() {
+		Assert.assertTrue(analyse("?s xyz:name ?o").covers(analyse("?s xyz:name ?o FILTER(?o = 'x')")));
+		Assert.assertFalse(analyse("?s xyz:name ?o FILTER(?o = 'x')").covers(analyse("?s xyz:name ?o")));
+	}
+
+	private static Node slot(int i) {
+		return NodeFactory.createURI("http://www.w3.org/1999/02/22-rdf-syntax-ns#_" + i);
+	}
+
+	@Test
+	public void isNeeded() {
+		OpComponentsAnalyser chain = analyse("?root a fx:root ; xyz:a ?a . ?a fx:anySlot ?i . ?i xyz:b ?b");
+		Assert.assertTrue(chain.isNeeded(Collections.emptyList()));
+		Assert.assertTrue(chain.isNeeded(Arrays.asList(xyz("a"))));
+		Assert.assertTrue(chain.isNeeded(Arrays.asList(xyz("a"), slot(3))));
+		Assert.assertFalse(chain.isNeeded(Arrays.asList(xyz("c"))));
+		Assert.assertFalse(chain.isNeeded(Arrays.asList(xyz("a"), xyz("b"))));
+		Assert.assertFalse(chain.isNeeded(Arrays.asList(xyz("a"), slot(3), xyz("b"))));
+
+		// Patterns not connected to the root
+		Assert.assertTrue(analyse("?root a fx:root ; xyz:a ?a . ?s xyz:b ?b").isNeeded(Arrays.asList(xyz("c"))));
+		Assert.assertTrue(analyse("?s xyz:b ?b").isNeeded(Arrays.asList(xyz("c"))));
+		Assert.assertTrue(analyse("").isNeeded(Arrays.asList(xyz("c"))));
+
+		// Each branch of a union is anchored to its own root
+		OpComponentsAnalyser union = analyse("{ ?root a fx:root ; xyz:a ?a } UNION { ?r a fx:root ; xyz:b ?b . ?b xyz:c ?c }");
+		Assert.assertTrue(union.isNeeded(Arrays.asList(xyz("b"))));
+		Assert.assertFalse(union.isNeeded(Arrays.asList(xyz("a"), xyz("c"))));
+		Assert.assertFalse(union.isNeeded(Arrays.asList(xyz("d"))));
+	}
+}
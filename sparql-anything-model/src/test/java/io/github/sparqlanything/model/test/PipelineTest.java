@@ -0,0 +1,104 @@
+/*
+ * Copyright (c) 2023 SPARQL Anything Contributors @ http://github.com/sparql-anything
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.sparqlanything.model.test;
+
+import io.github.sparqlanything.model.BaseFacadeXGraphBuilder;
+import io.github.sparqlanything.model.IRIArgument;
+import org.apache.jena.query.TxnType;
+import org.apache.jena.sparql.core.DatasetGraph;
+import org.apache.jena.sparql.core.Quad;
+import org.apache.jena.tdb2.DatabaseMgr;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Properties;
+import java.util.Set;
+
+public class PipelineTest {
+
+	private static final int ROWS = 5000;
+
+	private static Properties properties(boolean pipeline, String... options) {
+		Properties properties = new Properties();
+		properties.setProperty(IRIArgument.LOCATION.toString(), "http://example.org/data.csv");
+		properties.setProperty(IRIArgument.PIPELINE.toString(), Boolean.toString(pipeline));
+		for (int i = 0; i < options.length; i += 2) {
+			properties.setProperty(options[i], options[i + 1]);
+		}
+		return properties;
+	}
+
+	private static void triplify(BaseFacadeXGraphBuilder builder) {
+		builder.addRoot("");
+		for (int row = 1; row <= ROWS; row++) {
+			builder.addContainer("", "", row, "#row" + row);
+			builder.addValue("", "#row" + row, "a", "a" + row);
+			builder.addValue("", "#row" + row, "b", row % 10);
+			// Duplicated
+			builder.addValue("", "#row" + row, "b", row % 10);
+		}
+	}
+
+	private static Set<Quad> build(Properties properties) {
+		BaseFacadeXGraphBuilder builder = new BaseFacadeXGraphBuilder(properties);
+		triplify(builder);
+		DatasetGraph dg = builder.getDatasetGraph();
+		dg.commit();
+		dg.end();
+		dg.begin(TxnType.READ);
+		Set<Quad> quads = new HashSet<>();
+		dg.find().forEachRemaining(q -> {
+			if (q.getGraph().getURI().equals("http://example.org/data.csv#")) {
+				quads.add(q);
+			}
+		});
+		dg.end();
+		return quads;
+	}
+
+	@Test
+	public void sameTriples() {
+		Set<Quad> expected = build(properties(false));
+		Assert.assertEquals(3 * ROWS + 1, expected.size());
+		Assert.assertEquals(expected, build(properties(true)));
+		Assert.assertEquals(expected, build(properties(true, IRIArgument.COMPACT.toString(), "true")));
+		Assert.assertEquals(expected, build(properties(true, IRIArgument.ONDISK_SPILL.toString(), "1000")));
+		Assert.assertEquals(expected, build(properties(true, IRIArgument.ONDISK_SPILL.toString(), "1000", IRIArgument.ONDISK_LOADER.toString(), "none")));
+	}
+
+	@Test
+	public void triplifiedBeforeTheGraphIsReturned() {
+		BaseFacadeXGraphBuilder builder = new BaseFacadeXGraphBuilder(properties(true, IRIArgument.ONDISK_SPILL.toString(), "100"));
+		triplify(builder);
+		DatasetGraph dg = builder.getDatasetGraph();
+		Assert.assertTrue(DatabaseMgr.isTDB2(dg));
+		Assert.assertTrue(dg.isInTransaction());
+		dg.commit();
+		dg.end();
+	}
+
+	@Test
+	public void discard() {
+		BaseFacadeXGraphBuilder builder = new BaseFacadeXGraphBuilder(properties(true));
+		builder.addRoot("");
+		builder.discard();
+		for (Thread t : Thread.getAllStackTraces().keySet()) {
+			Assert.assertNotEquals("facade-x-indexer", t.getName());
+		}
+	}
+}
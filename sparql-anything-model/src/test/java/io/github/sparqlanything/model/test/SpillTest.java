@@ -0,0 +1,105 @@
+/*
+ * Copyright (c) 2023 SPARQL Anything Contributors @ http://github.com/sparql-anything
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.sparqlanything.model.test;
+
+import io.github.sparqlanything.model.BaseFacadeXGraphBuilder;
+import io.github.sparqlanything.model.IRIArgument;
+import org.apache.jena.query.TxnType;
+import org.apache.jena.sparql.core.DatasetGraph;
+import org.apache.jena.sparql.core.Quad;
+import org.apache.jena.tdb2.DatabaseMgr;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.HashSet;
+import java.util.Properties;
+import java.util.Set;
+
+public class SpillTest {
+
+	private static DatasetGraph build(String spill, String loader) {
+		Properties properties = new Properties();
+		properties.setProperty(IRIArgument.LOCATION.toString(), "http://example.org/data.csv");
+		if (spill != null) {
+			properties.setProperty(IRIArgument.ONDISK_SPILL.toString(), spill);
+		}
+		if (loader != null) {
+			properties.setProperty(IRIArgument.ONDISK_LOADER.toString(), loader);
+		}
+		BaseFacadeXGraphBuilder builder = new BaseFacadeXGraphBuilder(properties);
+		builder.addRoot("");
+		for (int row = 1; row <= 100; row++) {
+			builder.addContainer("", "", row, "#row" + row);
+			builder.addValue("", "#row" + row, "a", "a" + row);
+			builder.addValue("", "#row" + row, "b", row);
+		}
+		DatasetGraph dg = builder.getDatasetGraph();
+		dg.commit();
+		dg.end();
+		return dg;
+	}
+
+	private static Set<Quad> quads(DatasetGraph dg, String graph) {
+		dg.begin(TxnType.READ);
+		Set<Quad> quads = new HashSet<>();
+		dg.find().forEachRemaining(q -> {
+			if (q.getGraph().getURI().equals(graph)) {
+				quads.add(q);
+			}
+		});
+		dg.end();
+		return quads;
+	}
+
+	@Test
+	public void spill() {
+		DatasetGraph inMemory = build(null, null);
+		Assert.assertFalse(DatabaseMgr.isTDB2(inMemory));
+		Set<Quad> expected = quads(inMemory, "http://example.org/data.csv#");
+		Assert.assertEquals(301, expected.size());
+		// Below the threshold
+		Assert.assertFalse(DatabaseMgr.isTDB2(build("1000", null)));
+		for (String loader : new String[]{null, "none"}) {
+			DatasetGraph spilled = build("50", loader);
+			Assert.assertTrue(DatabaseMgr.isTDB2(spilled));
+			Assert.assertEquals(expected, quads(spilled, "http://example.org/data.csv#"));
+		}
+		// Any heap in use
+		Assert.assertTrue(DatabaseMgr.isTDB2(build("0%", null)));
+	}
+
+	@Test
+	public void release() {
+		DatasetGraph spilled = build("50", null);
+		Assert.assertTrue(BaseFacadeXGraphBuilder.isSpilled(spilled));
+		File location = new File(DatabaseMgr.location(spilled).getDirectoryPath());
+		Assert.assertTrue(location.isDirectory());
+		Assert.assertTrue(BaseFacadeXGraphBuilder.retain(spilled));
+		BaseFacadeXGraphBuilder.release(spilled);
+		// Still used
+		Assert.assertTrue(location.isDirectory());
+		BaseFacadeXGraphBuilder.release(spilled);
+		Assert.assertFalse(location.exists());
+		Assert.assertFalse(BaseFacadeXGraphBuilder.isSpilled(spilled));
+		Assert.assertFalse(BaseFacadeXGraphBuilder.retain(spilled));
+		// Other graphs are not affected
+		DatasetGraph inMemory = build(null, null);
+		Assert.assertTrue(BaseFacadeXGraphBuilder.retain(inMemory));
+		BaseFacadeXGraphBuilder.release(inMemory);
+	}
+}
@@ -24,6 +24,9 @@ import org.antlr.v4.runtime.tree.ParseTreeWalker;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Properties;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -34,6 +37,14 @@ public class FacadeIRIParser {
 	public final static String SPARQL_ANYTHING_URI_SCHEMA = "x-sparql-anything:";
 	private final static Pattern key = Pattern.compile("^[a-zA-Z0-9-]+");
 	private static final Logger log = LoggerFactory.getLogger(FacadeIRIParser.class);
+	// The properties of the IRIs parsed recently, least recently used first
+	private final static int MAX_CACHED_IRIS = 1000;
+	private final static Map<String, Properties> parsed = Collections.synchronizedMap(new LinkedHashMap<String, Properties>(16, 0.75f, true) {
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, Properties> eldest) {
+			return size() > MAX_CACHED_IRIS;
+		}
+	});
 
 	public FacadeIRIParser(String tupleURL) {
 		super();
@@ -48,7 +59,22 @@ public class FacadeIRIParser {
 		this.tupleURL = tupleURL;
 	}
 
+	/**
+	 * Returns the properties of the IRI. IRIs are parsed once, as the same IRI is usually evaluated for every solution
+	 * of a postponed SERVICE clause; the result is a copy the caller can modify.
+	 */
 	public Properties getProperties() {
+		Properties properties = parsed.get(tupleURL);
+		if (properties == null) {
+			properties = parse();
+			parsed.put(tupleURL, properties);
+		}
+		Properties copy = new Properties();
+		copy.putAll(properties);
+		return copy;
+	}
+
+	private Properties parse() {
 		FacadeIRILexer lexer = new FacadeIRILexer(
 				CharStreams.fromString(escape(tupleURL.substring(SPARQL_ANYTHING_URI_SCHEMA.length()))));
 		CommonTokenStream tokens = new CommonTokenStream(lexer);
@@ -36,6 +36,18 @@ public class FacadeIRIParserTest {
 		Assert.assertTrue(((Properties) p).containsKey("location"));
 	}
 
+	@Test
+	public void testCachedPropertiesAreCopies() {
+		String uri = "x-sparql-anything:mimeType=application/json,location=file://cached.json";
+		Properties p = new FacadeIRIParser(uri).getProperties();
+		p.setProperty("location", "file://other.json");
+		p.setProperty("namespace", "http://example.org/");
+		Properties again = new FacadeIRIParser(uri).getProperties();
+		Assert.assertEquals("file://cached.json", again.get("location"));
+		Assert.assertFalse(again.containsKey("namespace"));
+		Assert.assertEquals(2, again.size());
+	}
+
 	@Test
 	public void testArgsInLocation1() {
 		String uri = "x-sparql-anything:mimeType=application/json,location=http://myfile.json?foo=bar";
@@ -97,6 +97,8 @@ public class RDFTriplifier implements Triplifier {
 						log.trace("Response: {}", response);
 						log.trace("Response body: {}", IOUtils.toString(response.getEntity().getContent(), Charset.defaultCharset()));
 					}
+					// Release the connection
+					response.close();
 					throw new TriplifierHTTPException(response.getStatusLine().toString());
 				}
 				is = response.getEntity().getContent();
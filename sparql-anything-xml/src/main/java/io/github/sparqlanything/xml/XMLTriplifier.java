@@ -43,6 +43,7 @@ import java.io.InputStream;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Deque;
 import java.util.HashMap;
 import java.util.Iterator;
@@ -182,6 +183,8 @@ public class XMLTriplifier implements Triplifier, Slicer {
 		Deque<String> stack = new ArrayDeque<>();
 		Map<String, Integer> members = new HashMap<>();
 		String path = "";
+		// The container membership slots from the root to the current element
+		List<Object> keyPath = new ArrayList<>();
 		StringBuilder charBuilder = null;
 		//
 		try {
@@ -214,6 +217,9 @@ public class XMLTriplifier implements Triplifier, Slicer {
 				}
 
 				// reset current resource
+				if (stack.size() > 1) {
+					keyPath.remove(keyPath.size() - 1);
+				}
 				stack.removeLast();
 			}
 			try {
@@ -251,6 +257,18 @@ public class XMLTriplifier implements Triplifier, Slicer {
 					String parent = stack.peekLast();
 					member = members.get(parent) + 1;
 					members.put(parent, member);
+
+					List<Object> elementPath = new ArrayList<>(keyPath);
+					elementPath.add(member);
+					if (!builder.isNeeded(dataSourceId, elementPath)) {
+						log.trace("skipping element: {}/{}:{}", path, member, name);
+						builder.addContainer(dataSourceId, parent, member, StringUtils.join("", root, path, "/", Integer.toString(member), ":", name));
+						skipElement(eventReader);
+						// The end of the element has been consumed
+						event = null;
+						continue;
+					}
+					keyPath.add(member);
 				}
 
 				if (path.equals("")) {
@@ -305,6 +323,22 @@ public class XMLTriplifier implements Triplifier, Slicer {
 		}
 	}
 
+	private void skipElement(XMLEventReader eventReader) throws IOException {
+		int depth = 1;
+		try {
+			while (depth > 0 && eventReader.hasNext()) {
+				XMLEvent event = eventReader.nextEvent();
+				if (event.isStartElement()) {
+					depth++;
+				} else if (event.isEndElement()) {
+					depth--;
+				}
+			}
+		} catch (XMLStreamException e) {
+			throw new IOException("Journey interrupted.", e);
+		}
+	}
+
 	private String toIRI(QName qname, String namespace) {
 		String ns;
 		if (qname.getNamespaceURI().equals("")) {
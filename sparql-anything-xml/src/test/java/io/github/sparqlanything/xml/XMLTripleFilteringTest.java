@@ -0,0 +1,92 @@
+/*
+ * Copyright (c) 2023 SPARQL Anything Contributors @ http://github.com/sparql-anything
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.sparqlanything.xml;
+
+import io.github.sparqlanything.model.FacadeXGraphBuilder;
+import io.github.sparqlanything.model.IRIArgument;
+import io.github.sparqlanything.model.TripleFilteringFacadeXGraphBuilder;
+import io.github.sparqlanything.model.TriplifierHTTPException;
+import org.apache.jena.query.DatasetFactory;
+import org.apache.jena.query.Query;
+import org.apache.jena.query.QueryExecution;
+import org.apache.jena.query.QueryExecutionFactory;
+import org.apache.jena.query.QueryFactory;
+import org.apache.jena.sparql.algebra.Algebra;
+import org.apache.jena.sparql.algebra.Op;
+import org.apache.jena.sparql.core.DatasetGraph;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+
+public class XMLTripleFilteringTest {
+
+	private static final String PREFIXES = "PREFIX rdf: <http://www.w3.org/1999/02/22-rdf-syntax-ns#> PREFIX fx: <http://sparql.xyz/facade-x/ns/> PREFIX xyz: <http://sparql.xyz/facade-x/data/> ";
+
+	private static List<String> select(Query query, DatasetGraph dg) {
+		List<String> results = new ArrayList<>();
+		try (QueryExecution qexec = QueryExecutionFactory.create(query, DatasetFactory.wrap(dg))) {
+			qexec.execSelect().forEachRemaining(qs -> results.add(qs.toString()));
+		}
+		Collections.sort(results);
+		return results;
+	}
+
+	@Test
+	public void skipUnneededElements() throws IOException, TriplifierHTTPException {
+		URL url = getClass().getClassLoader().getResource("./Books.xml");
+		Properties properties = new Properties();
+		properties.setProperty(IRIArgument.LOCATION.toString(), url.toString());
+		properties.setProperty(IRIArgument.BLANK_NODES.toString(), "false");
+		Query query = QueryFactory.create(PREFIXES + "SELECT * WHERE { ?root a fx:root ; rdf:_2 ?book . ?book xyz:isbn ?isbn ; rdf:_2 ?title . ?title rdf:_1 ?t }");
+		Op op = Algebra.compile(query);
+		List<List<Object>> skipped = new ArrayList<>();
+		FacadeXGraphBuilder pruned = new TripleFilteringFacadeXGraphBuilder(url.toString(), op, properties) {
+			@Override
+			public boolean isNeeded(String dataSourceId, List<Object> path) {
+				boolean needed = super.isNeeded(dataSourceId, path);
+				if (!needed) {
+					skipped.add(path);
+				}
+				return needed;
+			}
+		};
+		new XMLTriplifier().triplify(properties, pruned);
+		FacadeXGraphBuilder full = new TripleFilteringFacadeXGraphBuilder(url.toString(), op, properties) {
+			@Override
+			public boolean isNeeded(String dataSourceId, List<Object> path) {
+				return true;
+			}
+		};
+		new XMLTriplifier().triplify(properties, full);
+		// The other books, and the other children of the second one, are not visited
+		Assert.assertTrue(skipped.containsAll(Arrays.asList(Collections.singletonList(1), Collections.singletonList(3), Arrays.asList(2, 1), Arrays.asList(2, 3))));
+		Assert.assertFalse(skipped.contains(Collections.singletonList(2)));
+		Assert.assertFalse(skipped.contains(Arrays.asList(2, 2)));
+		List<String> results = select(query, pruned.getDatasetGraph());
+		Assert.assertEquals(1, results.size());
+		Assert.assertTrue(results.get(0).contains("Midnight Rain"));
+		Assert.assertEquals(select(query, full.getDatasetGraph()), results);
+		Assert.assertTrue(pruned.getDatasetGraph().getDefaultGraph().size() < full.getDatasetGraph().getDefaultGraph().size());
+	}
+}